@@ -0,0 +1,18 @@
+import ircbench.Workload;
+
+/**
+ * The workload handling a PING line, which goes through the parser and the command registry to a cheap command.
+ */
+public class DispatchWorkload implements Workload {
+
+    private ConnectionHandler user;
+
+    public void setUp(String param, int threads) throws Exception {
+        user = SinkTransport.newUser(new ServerContext("bench"), 0, false);
+    }
+
+    public Object run(int thread) throws Exception {
+        user.handleLine("PING irc.example.org");
+        return user;
+    }
+}
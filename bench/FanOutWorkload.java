@@ -0,0 +1,23 @@
+import ircbench.Workload;
+
+/**
+ * The workload sending a PRIVMSG to a channel of the given number of members.
+ */
+public class FanOutWorkload implements Workload {
+
+    private ConnectionHandler sender;
+
+    public void setUp(String param, int threads) throws Exception {
+        ServerContext context = new ServerContext("bench");
+        int members = Integer.parseInt(param);
+        for (int i = 0; i < members; i++) {
+            SinkTransport.newUser(context, i, true).joinChannel("#fanout");
+        }
+        sender = SinkTransport.newUser(context, members, true);
+    }
+
+    public Object run(int thread) throws Exception {
+        sender.sendChannelPrivmsgMessage("#fanout", "hello everyone");
+        return sender;
+    }
+}
@@ -0,0 +1,33 @@
+import ircbench.Workload;
+
+/**
+ * The workload of the JOIN/PART locking, through the JOIN and PART commands as a connection runs them.
+ * Every thread drives its own user, which joins a channel and parts it again. With a shared channel all threads
+ * join the same one, so their joins are serialized on it; with distinct channels every thread has a channel of its
+ * own, and the throughput should grow with the threads up to the number of cores.
+ */
+public class JoinPartWorkload implements Workload {
+
+    private Command join;
+    private Command part;
+    private ConnectionHandler[] users;
+    private String[] channelNames;
+
+    public void setUp(String param, int threads) throws Exception {
+        ServerContext context = new ServerContext("bench");
+        join = context.getCommandRegistry().find(Configuration.JOIN_STRING);
+        part = context.getCommandRegistry().find(Configuration.PART_STRING);
+        users = new ConnectionHandler[threads];
+        channelNames = new String[threads];
+        for (int i = 0; i < threads; i++) {
+            users[i] = SinkTransport.newUser(context, i, true);
+            channelNames[i] = "shared".equals(param) ? "#shared" : "#channel" + i;
+        }
+    }
+
+    public Object run(int thread) throws Exception {
+        join.execute(users[thread], channelNames[thread]);
+        part.execute(users[thread], channelNames[thread]);
+        return users[thread];
+    }
+}
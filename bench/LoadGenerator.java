@@ -0,0 +1,306 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The load generator opens many simulated users against a running IrcServer, registers them, spreads them across
+ * channels and drives PRIVMSG traffic at a fixed rate. It reports the connect throughput, the registration time and
+ * the latency from a sender writing a PRIVMSG to each other channel member reading it.
+ * Every user is served by one selector thread, so a single box can drive the server over loopback until it
+ * saturates.
+ *
+ * Usage, with the server started separately in the transport mode under test:
+ *   gradle :bench:loadGenerator --args='--clients 1000 --channels 10 --rate 2000 --duration 30'
+ * The other options are --host, --port and --warmup (seconds of traffic not counted in the latency).
+ * With --rate 0 the users stay idle once they joined, which measures the memory the server needs per connection.
+ * All users connect from one address, so the server should run with -Dirc.flood.rate=0 -Dirc.flood.addressRate=0
+ * unless the flood control itself is under test.
+ */
+public class LoadGenerator {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private String host = "127.0.0.1";
+    private int port = 6667;
+    private int clients = 100;
+    private int channels = 10;
+    private int rate = 1000;
+    private int durationSeconds = 10;
+    private int warmupSeconds = 2;
+
+    private Selector selector;
+    private Client[] users;
+    private LatencyHistogram registration = new LatencyHistogram();
+    private LatencyHistogram delivery = new LatencyHistogram();
+    private int registered;
+    private int joined;
+    private long sent;
+    private long received;
+    private boolean recording;
+
+    /**
+     * runs the load and prints the report.
+     * @param args the options
+     * @throws IOException the connection to the server failed
+     */
+    public static void main(String[] args) throws IOException {
+        LoadGenerator generator = new LoadGenerator();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host":
+                    generator.host = value;
+                    break;
+                case "--port":
+                    generator.port = Integer.parseInt(value);
+                    break;
+                case "--clients":
+                    generator.clients = Integer.parseInt(value);
+                    break;
+                case "--channels":
+                    generator.channels = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    generator.rate = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    generator.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    generator.warmupSeconds = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        generator.run();
+    }
+
+    private void run() throws IOException {
+        selector = Selector.open();
+        users = new Client[clients];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.configureBlocking(false);
+            users[i] = new Client(i, channel);
+            users[i].key = channel.register(selector, SelectionKey.OP_READ, users[i]);
+        }
+        long connectNanos = System.nanoTime() - start;
+        System.out.printf("connected %d users in %.1f ms, %.0f connections/s%n",
+                clients, connectNanos / 1e6, clients * 1e9 / connectNanos);
+
+        start = System.nanoTime();
+        for (Client user : users) {
+            user.registerStart = System.nanoTime();
+            user.write("NICK " + user.nickName + "\r\nUSER " + user.nickName + " 0 * :Load " + user.index + "\r\n");
+        }
+        pollUntil(() -> registered == clients, 60000);
+        long registrationNanos = System.nanoTime() - start;
+        System.out.printf("registered %d users in %.1f ms, per user p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms%n",
+                registered, registrationNanos / 1e6, registration.percentile(50) / 1e6,
+                registration.percentile(99) / 1e6, registration.percentile(99.9) / 1e6);
+
+        for (Client user : users) {
+            user.write("JOIN " + user.channelName + "\r\n");
+        }
+        pollUntil(() -> joined == clients, 60000);
+        System.out.printf("joined %d users to %d channels%n", joined, channels);
+
+        drive();
+        selector.close();
+    }
+
+    private void drive() throws IOException {
+        long start = System.nanoTime();
+        long warmupEnd = start + warmupSeconds * 1000 * NANOS_PER_MILLI;
+        long end = warmupEnd + durationSeconds * 1000 * NANOS_PER_MILLI;
+        long recordedSent = 0;
+        long recordedReceived = 0;
+        int next = 0;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            if (!recording && now >= warmupEnd) {
+                recording = true;
+                recordedSent = sent;
+                recordedReceived = received;
+            }
+            long due = (now - start) * rate / (1000 * NANOS_PER_MILLI);
+            while (sent < due) {
+                Client user = users[next];
+                next = (next + 1) % clients;
+                user.write("PRIVMSG " + user.channelName + " :t=" + System.nanoTime() + "\r\n");
+                sent++;
+            }
+            poll(1);
+        }
+        long drainEnd = System.nanoTime() + 2000 * NANOS_PER_MILLI;
+        while (System.nanoTime() < drainEnd) {
+            poll(10);
+        }
+        System.out.printf("sent %d PRIVMSG at %d/s for %d s, %d deliveries (%.0f/s)%n",
+                sent - recordedSent, rate, durationSeconds, received - recordedReceived,
+                (received - recordedReceived) / (double) durationSeconds);
+        System.out.printf("delivery latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                delivery.percentile(50) / 1e6, delivery.percentile(99) / 1e6, delivery.percentile(99.9) / 1e6,
+                delivery.max() / 1e6);
+    }
+
+    /**
+     * The condition waited for by pollUntil.
+     */
+    interface Condition {
+        boolean reached();
+    }
+
+    private void pollUntil(Condition condition, long timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + timeoutMillis * NANOS_PER_MILLI;
+        while (!condition.reached()) {
+            if (System.nanoTime() > deadline) {
+                throw new IOException("timed out, the server did not answer every user");
+            }
+            poll(10);
+        }
+    }
+
+    private void poll(long timeoutMillis) throws IOException {
+        selector.select(timeoutMillis);
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            Client user = (Client) key.attachment();
+            if (key.isValid() && key.isWritable()) {
+                user.flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                user.read();
+            }
+        }
+    }
+
+    private void handleLine(Client user, String line) {
+        if (!user.registered && line.contains(" " + Configuration.NICK_CODE + " ")) {
+            user.registered = true;
+            registered++;
+            registration.record(System.nanoTime() - user.registerStart);
+        } else if (!user.joined && line.startsWith(":" + user.nickName + " " + Configuration.JOIN_STRING + " ")) {
+            user.joined = true;
+            joined++;
+        } else if (line.contains(" " + Configuration.PRIVMSG_STRING + " ")) {
+            int stamp = line.lastIndexOf(":t=");
+            if (stamp >= 0 && !line.startsWith(":" + user.nickName + " ")) {
+                received++;
+                if (recording) {
+                    delivery.record(System.nanoTime() - Long.parseLong(line.substring(stamp + 3).trim()));
+                }
+            }
+        }
+    }
+
+    /**
+     * The simulated user, with its socket and its partial lines in both directions.
+     */
+    private class Client {
+        private final int index;
+        private final String nickName;
+        private final String channelName;
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+        private SelectionKey key;
+        private long registerStart;
+        private boolean registered;
+        private boolean joined;
+
+        Client(int index, SocketChannel channel) {
+            this.index = index;
+            this.nickName = "l" + index;
+            this.channelName = "#load" + (index % channels);
+            this.channel = channel;
+        }
+
+        void write(String text) throws IOException {
+            pending.add(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+            flush();
+        }
+
+        void flush() throws IOException {
+            while (!pending.isEmpty()) {
+                ByteBuffer head = pending.peek();
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                pending.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                key.cancel();
+                channel.close();
+                return;
+            }
+            readBuffer.flip();
+            int lineStart = readBuffer.position();
+            for (int i = readBuffer.position(); i < readBuffer.limit(); i++) {
+                if (readBuffer.get(i) == '\n') {
+                    String line = new String(readBuffer.array(), lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    handleLine(this, line.trim());
+                    lineStart = i + 1;
+                }
+            }
+            readBuffer.position(lineStart);
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * The histogram of latencies in nanoseconds, with buckets of 1/32 of each power of two.
+     */
+    static class LatencyHistogram {
+        private static final int SUB_BUCKETS = 32;
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+        private long total;
+        private long max;
+
+        void record(long nanos) {
+            long value = Math.max(1, nanos);
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int shift = Math.max(0, exponent - 5);
+            int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            counts[exponent * SUB_BUCKETS + sub]++;
+            total++;
+            max = Math.max(max, value);
+        }
+
+        long percentile(double percentile) {
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    int exponent = i / SUB_BUCKETS;
+                    int sub = i % SUB_BUCKETS;
+                    int shift = Math.max(0, exponent - 5);
+                    return exponent < 5 ? sub : ((long) (SUB_BUCKETS + sub) << shift);
+                }
+            }
+            return 0;
+        }
+
+        long max() {
+            return max;
+        }
+    }
+}
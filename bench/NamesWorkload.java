@@ -0,0 +1,25 @@
+import ircbench.Workload;
+
+/**
+ * The workload of the NAMES reply of a channel of the given number of members.
+ */
+public class NamesWorkload implements Workload {
+
+    private Command names;
+    private ConnectionHandler requester;
+
+    public void setUp(String param, int threads) throws Exception {
+        ServerContext context = new ServerContext("bench");
+        int members = Integer.parseInt(param);
+        for (int i = 0; i < members; i++) {
+            SinkTransport.newUser(context, i, true).joinChannel("#names");
+        }
+        requester = SinkTransport.newUser(context, members, true);
+        names = context.getCommandRegistry().find(Configuration.NAMES_STRING);
+    }
+
+    public Object run(int thread) throws Exception {
+        names.execute(requester, "#names");
+        return requester;
+    }
+}
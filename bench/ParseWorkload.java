@@ -0,0 +1,26 @@
+import ircbench.Workload;
+
+/**
+ * The workload parsing a few typical lines into one reused message.
+ */
+public class ParseWorkload implements Workload {
+
+    private static final String[] LINES = {
+        "PRIVMSG #general :hello everyone, how is it going?",
+        "JOIN #general",
+        "USER alice 0 * :Alice Liddell",
+        "PING irc.example.org",
+    };
+
+    private final IrcMessage message = new IrcMessage();
+
+    public void setUp(String param, int threads) {
+    }
+
+    public Object run(int thread) {
+        for (String line : LINES) {
+            LineParser.parse(line, message);
+        }
+        return message;
+    }
+}
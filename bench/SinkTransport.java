@@ -0,0 +1,47 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The in-memory sink standing in for a socket in the benchmarks, it drains the outbound queue into a buffer as soon
+ * as it is asked to write. Senders on several threads can ask at once, so it drains under its lock, as a single
+ * writer.
+ */
+public class SinkTransport implements ClientTransport {
+
+    private ConnectionHandler connectionHandler;
+    private ByteBuffer buffer = ByteBuffer.allocate(Configuration.WRITE_BUFFER_SIZE);
+
+    /**
+     * creates a user whose lines go to a sink.
+     * @param context the server the user connects to
+     * @param index the number of the user, which its nickname is made of
+     * @param register whether the user registers with NICK and USER
+     * @return the connection of the user
+     * @throws Exception the user cannot register
+     */
+    public static ConnectionHandler newUser(ServerContext context, int index, boolean register) throws Exception {
+        SinkTransport transport = new SinkTransport();
+        ConnectionHandler user = new ConnectionHandler(context, transport);
+        transport.connectionHandler = user;
+        if (register) {
+            user.setNickName("u" + index);
+            user.register("u" + index + " 0 * :User " + index);
+        }
+        return user;
+    }
+
+    public synchronized void requestWrite() {
+        OutboundQueue outboundQueue = connectionHandler.getOutboundQueue();
+        int count;
+        do {
+            buffer.clear();
+            count = outboundQueue.fill(buffer);
+            outboundQueue.consume(count);
+        } while (count > 0);
+    }
+
+    public void close() {
+    }
+
+    public void abort() {
+    }
+}
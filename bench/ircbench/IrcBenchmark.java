@@ -0,0 +1,188 @@
+package ircbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * The JMH benchmarks of the hot paths of the server: line parsing, command dispatch, channel fan-out, JOIN/PART churn
+ * and NAMES replies. Every benchmark runs one workload, a default package class set up on the server classes.
+ * bench/README.md describes how to run them and which parts of the JSON results stay stable between versions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IrcBenchmark {
+
+    /**
+     * parses a few typical lines.
+     * @param state the parse workload
+     * @return the parsed message
+     * @throws Exception the workload failed
+     */
+    @Benchmark
+    public Object parse(ParseState state) throws Exception {
+        return state.workload.run(0);
+    }
+
+    /**
+     * handles a PING line, from the parser through the command registry.
+     * @param state the dispatch workload
+     * @return the connection of the user
+     * @throws Exception the line failed
+     */
+    @Benchmark
+    public Object dispatch(DispatchState state) throws Exception {
+        return state.workload.run(0);
+    }
+
+    /**
+     * sends a PRIVMSG to every member of a channel.
+     * @param state the fan-out workload
+     * @return the connection of the sender
+     * @throws Exception the message failed
+     */
+    @Benchmark
+    public Object fanOut(FanOutState state) throws Exception {
+        return state.workload.run(0);
+    }
+
+    /**
+     * joins a channel and parts it again, on as many threads as JMH runs with -t.
+     * @param state the JOIN/PART workload
+     * @param thread the index of the calling thread
+     * @return the connection of the user
+     * @throws Exception the commands failed
+     */
+    @Benchmark
+    public Object joinPartChurn(JoinPartState state, ThreadParams thread) throws Exception {
+        return state.workload.run(thread.getThreadIndex());
+    }
+
+    /**
+     * replies to NAMES for a channel.
+     * @param state the NAMES workload
+     * @return the connection of the user
+     * @throws Exception the command failed
+     */
+    @Benchmark
+    public Object names(NamesState state) throws Exception {
+        return state.workload.run(0);
+    }
+
+    private static Workload load(String className, String param, BenchmarkParams params) throws Exception {
+        Workload workload = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+        workload.setUp(param, params.getThreads());
+        return workload;
+    }
+
+    /**
+     * The state of the parse benchmark.
+     */
+    @State(Scope.Thread)
+    public static class ParseState {
+        private Workload workload;
+
+        /**
+         * sets up the workload.
+         * @param params the parameters of the run
+         * @throws Exception the set up failed
+         */
+        @Setup
+        public void setUp(BenchmarkParams params) throws Exception {
+            workload = load("ParseWorkload", "", params);
+        }
+    }
+
+    /**
+     * The state of the dispatch benchmark.
+     */
+    @State(Scope.Thread)
+    public static class DispatchState {
+        private Workload workload;
+
+        /**
+         * sets up the workload.
+         * @param params the parameters of the run
+         * @throws Exception the set up failed
+         */
+        @Setup
+        public void setUp(BenchmarkParams params) throws Exception {
+            workload = load("DispatchWorkload", "", params);
+        }
+    }
+
+    /**
+     * The state of the fan-out benchmark, with the number of channel members.
+     */
+    @State(Scope.Benchmark)
+    public static class FanOutState {
+        @Param({"10", "1000", "10000"})
+        public String members;
+        private Workload workload;
+
+        /**
+         * sets up the workload.
+         * @param params the parameters of the run
+         * @throws Exception the set up failed
+         */
+        @Setup
+        public void setUp(BenchmarkParams params) throws Exception {
+            workload = load("FanOutWorkload", members, params);
+        }
+    }
+
+    /**
+     * The state of the JOIN/PART benchmark, with one channel shared by all threads or a distinct one per thread.
+     */
+    @State(Scope.Benchmark)
+    public static class JoinPartState {
+        @Param({"shared", "distinct"})
+        public String channel;
+        private Workload workload;
+
+        /**
+         * sets up the workload.
+         * @param params the parameters of the run
+         * @throws Exception the set up failed
+         */
+        @Setup
+        public void setUp(BenchmarkParams params) throws Exception {
+            workload = load("JoinPartWorkload", channel, params);
+        }
+    }
+
+    /**
+     * The state of the NAMES benchmark, with the number of channel members.
+     */
+    @State(Scope.Benchmark)
+    public static class NamesState {
+        @Param({"10", "1000", "10000"})
+        public String members;
+        private Workload workload;
+
+        /**
+         * sets up the workload.
+         * @param params the parameters of the run
+         * @throws Exception the set up failed
+         */
+        @Setup
+        public void setUp(BenchmarkParams params) throws Exception {
+            workload = load("NamesWorkload", members, params);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ircbench;
+
+/**
+ * One operation measured by IrcBenchmark, set up on the server classes.
+ * The server classes are in the default package, which JMH does not accept benchmarks in and named packages cannot
+ * import, so every workload is a default package class behind this interface, which IrcBenchmark loads by name.
+ */
+public interface Workload {
+
+    /**
+     * sets up the server state the operation runs on.
+     * @param param the parameter of the benchmark, like the number of channel members, or an empty string
+     * @param threads the number of threads running the operation
+     * @throws Exception the set up failed
+     */
+    void setUp(String param, int threads) throws Exception;
+
+    /**
+     * runs the operation once.
+     * @param thread the index of the calling thread, from 0 to the number of threads
+     * @return a result for the benchmark to consume, so the operation is not optimized away
+     * @throws Exception the operation failed
+     */
+    Object run(int thread) throws Exception;
+}
@@ -0,0 +1,75 @@
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The admission control which counts the open connections, of the server and of every address, and refuses new
+ * connections above the caps before any state is set up for them.
+ * The server count is only raised below its cap, so it is exact. The count of an address is raised first and
+ * lowered again if it is over the cap, two connections from one address at the same moment may both be refused.
+ */
+public class AdmissionControl {
+
+    private final int maxConnections;
+    private final int maxConnectionsPerAddress;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ConcurrentHashMap<InetAddress, Integer> addressConnections =
+            new ConcurrentHashMap<InetAddress, Integer>();
+
+    /**
+     * constructs the admission control, a cap of 0 does not limit.
+     * @param maxConnections the most connections the server keeps open
+     * @param maxConnectionsPerAddress the most connections one address keeps open
+     */
+    public AdmissionControl(int maxConnections, int maxConnectionsPerAddress) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
+    /**
+     * counts a new connection if it is within the caps.
+     * @param address the address of the user
+     * @return null if the connection is admitted, or else the reason it is refused
+     */
+    public String admit(InetAddress address) {
+        if (maxConnectionsPerAddress > 0) {
+            int addressCount = addressConnections.merge(address, 1, Integer::sum);
+            if (addressCount > maxConnectionsPerAddress) {
+                releaseAddress(address);
+                return "Too many connections from your host";
+            }
+        }
+        int count;
+        do {
+            count = connections.get();
+            if (maxConnections > 0 && count >= maxConnections) {
+                releaseAddress(address);
+                return "Server is full";
+            }
+        } while (!connections.compareAndSet(count, count + 1));
+        return null;
+    }
+
+    /**
+     * counts an admitted connection down when it is closed.
+     * @param address the address of the user
+     */
+    public void release(InetAddress address) {
+        connections.decrementAndGet();
+        releaseAddress(address);
+    }
+
+    private void releaseAddress(InetAddress address) {
+        if (maxConnectionsPerAddress > 0) {
+            addressConnections.computeIfPresent(address, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * gets the number of admitted connections which are still open.
+     * @return the number of connections
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The policy applied when the lines waiting for a user go over the outbound limits.
+ * Every policy counts how often it fired and how many lines it dropped, so the limits can be sized from real traffic.
+ * A policy only fires when it drops a line or disconnects a user, a user disconnected for going over twice the limits
+ * counts as a firing of DISCONNECT whatever the policy.
+ */
+public enum BackpressurePolicy {
+    /**
+     * drops the oldest droppable lines to make room for the new one.
+     */
+    DROP_OLDEST("drop-oldest"),
+    /**
+     * sends an ERROR and disconnects the user.
+     */
+    DISCONNECT("disconnect"),
+    /**
+     * drops new PRIVMSG lines, while JOIN, PART and QUIT are still delivered.
+     */
+    SHED_PRIVMSG("shed-privmsg");
+
+    private final String name;
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    BackpressurePolicy(String name) {
+        this.name = name;
+    }
+
+    /**
+     * finds the policy by its configured name.
+     * @param name the name of policy
+     * @return the policy, or DISCONNECT if the name is unknown
+     */
+    public static BackpressurePolicy fromString(String name) {
+        for (BackpressurePolicy policy : values()) {
+            if (policy.name.equals(name)) {
+                return policy;
+            }
+        }
+        return DISCONNECT;
+    }
+
+    /**
+     * counts one firing of this policy.
+     * @param droppedLines the number of lines it dropped, 0 if it disconnected the user
+     */
+    public void fire(int droppedLines) {
+        fired.increment();
+        dropped.add(droppedLines);
+    }
+
+    /**
+     * gets how many times this policy fired since the server started.
+     * @return the number of firings
+     */
+    public long getFiredCount() {
+        return fired.sum();
+    }
+
+    /**
+     * gets how many lines this policy dropped since the server started.
+     * @return the number of lines
+     */
+    public long getDroppedLines() {
+        return dropped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
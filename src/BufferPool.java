@@ -0,0 +1,52 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of buffers of one size shared by every connection. A connection takes a buffer only while it has bytes to
+ * read or write and gives it back before it waits again, so an idle connection holds none. At most a fixed number of
+ * free buffers are kept, the others are left to the garbage collector.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxFree;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    /**
+     * constructs an empty pool.
+     * @param bufferSize the size of every buffer
+     * @param maxFree the maximum number of free buffers kept
+     */
+    public BufferPool(int bufferSize, int maxFree) {
+        this.bufferSize = bufferSize;
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * takes a cleared buffer from the pool, or a new one if the pool is empty.
+     * @return the buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(bufferSize);
+        }
+        freeCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * gives a buffer back to the pool, it must not be used afterwards.
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if (freeCount.incrementAndGet() <= maxFree) {
+            free.offer(buffer);
+        } else {
+            freeCount.decrementAndGet();
+        }
+    }
+}
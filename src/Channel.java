@@ -0,0 +1,256 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The channel keeps its members as the ids of their connections in a compact set, so a membership costs four bytes
+ * or a single bit, and nicknames never appear in it. Joining and parting lock the channel only.
+ * The fan-out iterates an array snapshot of the members, which is rebuilt from the ids only after the membership
+ * changed, and never blocks or throws while other users join or part.
+ * The nicknames for NAMES are cached the same way, and the cache also goes stale when a member changes nickname.
+ * The recent PRIVMSG lines are recorded under the same lock as the joins, and a join marks the last line recorded
+ * before it, so a joining user gets every line either from the history or live, and never both.
+ */
+public class Channel {
+
+    private static final ConnectionHandler[] NO_MEMBERS = new ConnectionHandler[0];
+    private static final String[] NO_NAMES = new String[0];
+
+    private final String name;
+    private final UserTable userTable;
+    private final ChannelHistory history;
+    private final IdSet members = new IdSet();
+    private volatile int size;
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(0, NO_MEMBERS);
+    private volatile Names names = new Names(0, 0, NO_NAMES);
+
+    /**
+     * constructs an empty channel.
+     * @param name the channel name
+     * @param userTable the table the ids of the members are looked up in
+     * @param history the recent lines of the channel
+     */
+    public Channel(String name, UserTable userTable, ChannelHistory history) {
+        this.name = name;
+        this.userTable = userTable;
+        this.history = history;
+    }
+
+    /**
+     * gets the channel name.
+     * @return the channel name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * adds a user to the channel.
+     * @param member the connection of the user, which must have an id
+     * @return the history mark to replay the history to the new member with, or -1 if the user is already in the
+     * channel
+     */
+    public synchronized long join(ConnectionHandler member) {
+        if (!members.add(member.getId())) {
+            return -1;
+        }
+        size = members.size();
+        version.incrementAndGet();
+        return history.getMark();
+    }
+
+    /**
+     * queues the lines recorded before a user joined for the user, the newer lines were sent to the user live.
+     * @param member the connection of the user
+     * @param mark the history mark the join returned
+     */
+    public void replayHistory(ConnectionHandler member, long mark) {
+        history.replayTo(member, Configuration.OUTBOUND_MAX_LINES / 2, mark);
+    }
+
+    /**
+     * records a PRIVMSG line in the history and gets the members it is sent to.
+     * @param line the encoded line
+     * @return the members at the time of the call, which must not be modified
+     */
+    public ConnectionHandler[] record(EncodedLine line) {
+        if (!history.isEnabled()) {
+            return getMembers();
+        }
+        synchronized (this) {
+            history.append(line);
+            return getMembers();
+        }
+    }
+
+    /**
+     * records a PRIVMSG line in the history and adds the members who are not in the bitset yet to the recipients,
+     * the same as collectNewMembers.
+     * @param line the encoded line
+     * @param seen the bitset of the ids already collected
+     * @param recipients the collected users
+     * @return the bitset, or a grown copy of it
+     */
+    public synchronized long[] record(EncodedLine line, long[] seen, List<ConnectionHandler> recipients) {
+        history.append(line);
+        return collectNewMembers(seen, recipients);
+    }
+
+    /**
+     * removes a user from the channel.
+     * @param member the connection of the user
+     * @return false if the user is not in the channel
+     */
+    public synchronized boolean part(ConnectionHandler member) {
+        int id = member.getId();
+        boolean removed = id >= 0 && members.remove(id);
+        if (removed) {
+            size = members.size();
+            version.incrementAndGet();
+        }
+        return removed;
+    }
+
+    /**
+     * marks the cached nicknames as stale, it must be called after a member has changed nickname.
+     */
+    public void renamed() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * checks whether the user is in the channel.
+     * @param member the connection of the user
+     * @return the result of check
+     */
+    public synchronized boolean contains(ConnectionHandler member) {
+        int id = member.getId();
+        return id >= 0 && members.contains(id);
+    }
+
+    /**
+     * gets the number of users in the channel.
+     * @return the number of users
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * checks whether the channel has no user.
+     * @return the result of check
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * gets a snapshot of the members, which must not be modified.
+     * The ids are looked up under the lock, while none of them can be given back and handed to another user.
+     * @return the members at the time of the call
+     */
+    public ConnectionHandler[] getMembers() {
+        long current = version.get();
+        Snapshot cached = snapshot;
+        if (cached.version == current) {
+            return cached.members;
+        }
+        ConnectionHandler[] array;
+        synchronized (this) {
+            int[] ids = members.toArray();
+            array = new ConnectionHandler[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                array[i] = userTable.get(ids[i]);
+            }
+        }
+        snapshot = new Snapshot(current, array);
+        return array;
+    }
+
+    /**
+     * adds the members whose ids are not yet set in a bitset to the recipients, and sets their ids.
+     * Calling it for several channels with the same bitset collects every user of them once, unless a user leaves
+     * its last channel and joins again in between, which gives the user a new id.
+     * @param seen the bitset of the ids already collected
+     * @param recipients the collected users
+     * @return the bitset, or a grown copy of it
+     */
+    public synchronized long[] collectNewMembers(long[] seen, List<ConnectionHandler> recipients) {
+        for (int id : members.toArray()) {
+            int word = id >>> 6;
+            if (word >= seen.length) {
+                long[] grown = new long[Math.max(word + 1, seen.length * 2)];
+                System.arraycopy(seen, 0, grown, 0, seen.length);
+                seen = grown;
+            }
+            if ((seen[word] & (1L << id)) == 0) {
+                seen[word] |= 1L << id;
+                recipients.add(userTable.get(id));
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * gets the nicknames of the members, joined by spaces into chunks no longer than the given length.
+     * The chunks are cached and only rebuilt after the members or their nicknames changed.
+     * @param maxLength the maximum length of one chunk
+     * @return the chunks, which must not be modified
+     */
+    public String[] getNames(int maxLength) {
+        long current = version.get();
+        Names cached = names;
+        if (cached.version == current && cached.maxLength == maxLength) {
+            return cached.chunks;
+        }
+        List<String> chunks = new ArrayList<String>();
+        StringBuilder chunk = new StringBuilder(maxLength);
+        for (ConnectionHandler member : getMembers()) {
+            String nickName = member.getNickName();
+            if (chunk.length() > 0 && chunk.length() + 1 + nickName.length() > maxLength) {
+                chunks.add(chunk.toString());
+                chunk.setLength(0);
+            }
+            if (chunk.length() > 0) {
+                chunk.append(' ');
+            }
+            chunk.append(nickName);
+        }
+        if (chunk.length() > 0) {
+            chunks.add(chunk.toString());
+        }
+        String[] array = chunks.toArray(NO_NAMES);
+        names = new Names(current, maxLength, array);
+        return array;
+    }
+
+    /**
+     * The members array together with the membership version it was built from.
+     * A snapshot built while the members change carries the older version, so the next reader rebuilds it.
+     */
+    private static class Snapshot {
+        private final long version;
+        private final ConnectionHandler[] members;
+
+        Snapshot(long version, ConnectionHandler[] members) {
+            this.version = version;
+            this.members = members;
+        }
+    }
+
+    /**
+     * The NAMES chunks together with the version and the chunk length they were built for.
+     */
+    private static class Names {
+        private final long version;
+        private final int maxLength;
+        private final String[] chunks;
+
+        Names(long version, int maxLength, String[] chunks) {
+            this.version = version;
+            this.maxLength = maxLength;
+            this.chunks = chunks;
+        }
+    }
+}
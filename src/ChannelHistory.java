@@ -0,0 +1,214 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The recent PRIVMSG lines of one channel, replayed to the users who join it.
+ * The lines are kept encoded, one after the other in a single circular buffer which is either on the heap or a
+ * direct buffer outside it, so a long history is one object to the garbage collector whatever its number of lines.
+ * The buffer starts small and doubles up to the room the line limit needs, the oldest lines make room for new ones,
+ * and the whole buffer is given back when the history store evicts the channel. A discarded history belongs to a
+ * removed channel and records nothing more.
+ */
+public class ChannelHistory {
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final String name;
+    private final int maxLines;
+    private final int maxCapacity;
+    private final HistoryStore store;
+    private ByteBuffer data;
+    private final int[] starts;
+    private final int[] lengths;
+    private int first;
+    private int count;
+    private int used;
+    private int writePosition;
+    private long appended;
+    private boolean discarded;
+    private volatile long lastUsed;
+
+    /**
+     * constructs an empty history.
+     * @param name the channel name
+     * @param maxLines the number of lines kept
+     * @param store the store which accounts for the memory of the history
+     */
+    public ChannelHistory(String name, int maxLines, HistoryStore store) {
+        this.name = name;
+        this.maxLines = maxLines;
+        this.maxCapacity = maxLines * Configuration.MAX_LINE_LENGTH;
+        this.store = store;
+        this.starts = new int[maxLines];
+        this.lengths = new int[maxLines];
+        this.lastUsed = System.nanoTime();
+    }
+
+    /**
+     * gets the channel name.
+     * @return the channel name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * gets the last time a line was added or replayed, the history which was used longest ago is evicted first.
+     * @return the time in nanoseconds
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * checks whether the history keeps lines at all.
+     * @return false if the history of the channel is turned off
+     */
+    public boolean isEnabled() {
+        return maxLines > 0;
+    }
+
+    /**
+     * adds a line, dropping the oldest lines if there is no room for it.
+     * @param line the encoded line
+     */
+    public synchronized void append(EncodedLine line) {
+        byte[] bytes = line.getBytes();
+        int length = bytes.length;
+        if (maxLines == 0 || length > maxCapacity || discarded) {
+            return;
+        }
+        lastUsed = System.nanoTime();
+        if (count == maxLines) {
+            dropOldest();
+        }
+        int capacity = data == null ? 0 : data.capacity();
+        while (capacity - used < length) {
+            if (capacity < maxCapacity) {
+                capacity = grow(capacity);
+            } else {
+                dropOldest();
+            }
+        }
+        int index = (first + count) % maxLines;
+        starts[index] = writePosition;
+        lengths[index] = length;
+        copyIn(writePosition, bytes, length);
+        writePosition = (writePosition + length) % capacity;
+        used += length;
+        count++;
+        appended++;
+    }
+
+    /**
+     * gets the number of lines added so far, which marks the lines a joining user gets from the history.
+     * @return the number of lines
+     */
+    public synchronized long getMark() {
+        return appended;
+    }
+
+    /**
+     * queues the newest lines added before a mark for a user, through the user's outbound queue like any other line.
+     * @param member the connection of the user
+     * @param limit the maximum number of lines
+     * @param mark the mark taken when the user joined, later lines went to the user live
+     */
+    public synchronized void replayTo(ConnectionHandler member, int limit, long mark) {
+        int end = count - (int) Math.min(count, appended - mark);
+        if (end <= 0) {
+            return;
+        }
+        lastUsed = System.nanoTime();
+        int replayed = Math.min(end, limit);
+        for (int i = end - replayed; i < end; i++) {
+            int index = (first + i) % maxLines;
+            byte[] bytes = new byte[lengths[index]];
+            copyOut(starts[index], bytes);
+            member.send(new EncodedLine(bytes, true));
+        }
+    }
+
+    /**
+     * drops every line and gives the buffer back.
+     * @return the number of bytes given back
+     */
+    public synchronized long clear() {
+        long freed = data == null ? 0 : data.capacity();
+        data = null;
+        first = 0;
+        count = 0;
+        used = 0;
+        writePosition = 0;
+        return freed;
+    }
+
+    /**
+     * drops every line and gives the buffer back for good, the channel has been removed.
+     * A sender still holding the removed channel records nothing, so no buffer is taken again.
+     * @return the number of bytes given back
+     */
+    public synchronized long discard() {
+        discarded = true;
+        return clear();
+    }
+
+    /**
+     * checks whether the history holds no buffer.
+     * @return the result of check
+     */
+    public synchronized boolean isEmpty() {
+        return data == null;
+    }
+
+    private void dropOldest() {
+        used -= lengths[first];
+        first = (first + 1) % maxLines;
+        count--;
+    }
+
+    private int grow(int capacity) {
+        int grown = Math.min(Math.max(capacity * 2, INITIAL_CAPACITY), maxCapacity);
+        ByteBuffer old = data;
+        data = store.allocate(grown);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (first + i) % maxLines;
+            byte[] bytes = new byte[lengths[index]];
+            copyOut(old, starts[index], bytes);
+            starts[index] = position;
+            copyIn(position, bytes, bytes.length);
+            position += bytes.length;
+        }
+        writePosition = position;
+        store.released(capacity);
+        return grown;
+    }
+
+    private void copyIn(int position, byte[] bytes, int length) {
+        int capacity = data.capacity();
+        int head = Math.min(length, capacity - position);
+        ByteBuffer view = data.duplicate();
+        view.position(position);
+        view.put(bytes, 0, head);
+        if (head < length) {
+            view.position(0);
+            view.put(bytes, head, length - head);
+        }
+    }
+
+    private void copyOut(int position, byte[] bytes) {
+        copyOut(data, position, bytes);
+    }
+
+    private static void copyOut(ByteBuffer buffer, int position, byte[] bytes) {
+        int capacity = buffer.capacity();
+        int head = Math.min(bytes.length, capacity - position);
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes, 0, head);
+        if (head < bytes.length) {
+            view.position(0);
+            view.get(bytes, head, bytes.length - head);
+        }
+    }
+}
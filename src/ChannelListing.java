@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+
+import exception.InvalidListArgumentsException;
+
+/**
+ * One LIST request in progress. The channels are walked in name order through the sorted channel index, a chunk at
+ * a time, and the walk remembers the last name it looked at so the next chunk carries on from there even if channels
+ * were created or removed in between. A chunk ends after a number of replies or of channels looked at, whichever
+ * comes first, so a filter which skips most channels does not walk the whole index at once.
+ * The arguments are a comma separated list of filters: "&gt;n" keeps the channels with more than n users, "&lt;n"
+ * the channels with fewer than n users, and every other item is a channel name or a mask where "*" matches any
+ * characters and "?" matches one. A channel is listed if it passes the user count filters and matches one of the
+ * masks, or there is no mask.
+ */
+public class ChannelListing {
+
+    private final NavigableMap<String, Channel> channelIndex;
+    private final List<String> masks = new ArrayList<String>();
+    private int minUsers = 0;
+    private int maxUsers = Integer.MAX_VALUE;
+    private String from;
+    private String to;
+    private String lastName;
+
+    /**
+     * constructs a listing of the channels.
+     * @param channelIndex the channels sorted by name
+     * @param arguments the filters from user
+     * @throws InvalidListArgumentsException a user count filter is not a number
+     */
+    public ChannelListing(NavigableMap<String, Channel> channelIndex, String arguments)
+            throws InvalidListArgumentsException {
+        this.channelIndex = channelIndex;
+        for (String item : arguments.trim().split(",")) {
+            if (item.isEmpty()) {
+                continue;
+            }
+            try {
+                if (item.charAt(0) == '>') {
+                    minUsers = Math.max(minUsers, Integer.parseInt(item.substring(1)) + 1);
+                } else if (item.charAt(0) == '<') {
+                    maxUsers = Math.min(maxUsers, Integer.parseInt(item.substring(1)) - 1);
+                } else {
+                    masks.add(item);
+                }
+            } catch (NumberFormatException numberFormatException) {
+                throw new InvalidListArgumentsException("Invalid arguments to LIST command");
+            }
+        }
+        if (masks.size() == 1) {
+            String prefix = literalPrefix(masks.get(0));
+            if (!prefix.isEmpty()) {
+                from = prefix;
+                to = prefix + Character.MAX_VALUE;
+            }
+        }
+    }
+
+    /**
+     * sends the next chunk of 322 replies, or the 323 reply once every channel has been listed.
+     * @param connectionHandler the connection of the user
+     * @param maxLines the maximum number of replies in the chunk
+     * @param maxScanned the maximum number of channels looked at in the chunk, including those filtered out
+     * @return true if there are more channels to list
+     */
+    public boolean sendChunk(ConnectionHandler connectionHandler, int maxLines, int maxScanned) {
+        String serverName = connectionHandler.getServerName();
+        String nickName = connectionHandler.getNickName();
+        NavigableMap<String, Channel> range = channelIndex;
+        if (from != null) {
+            range = range.subMap(from, true, to, false);
+        }
+        if (lastName != null) {
+            range = range.tailMap(lastName, false);
+        }
+        int sent = 0;
+        int scanned = 0;
+        for (Channel channel : range.values()) {
+            if (sent == maxLines || scanned == maxScanned) {
+                return true;
+            }
+            scanned++;
+            lastName = channel.getName();
+            int size = channel.size();
+            if (size < minUsers || size > maxUsers || !matchesAnyMask(lastName)) {
+                continue;
+            }
+            connectionHandler.send(":" + serverName + " " + Configuration.LIST_EACH_CODE + " " + nickName + " "
+                    + lastName + " " + size + " :");
+            sent++;
+        }
+        connectionHandler.send(":" + serverName + " " + Configuration.LIST_FINAL_CODE + " " + nickName
+                + " :End of LIST");
+        return false;
+    }
+
+    private boolean matchesAnyMask(String name) {
+        if (masks.isEmpty()) {
+            return true;
+        }
+        for (String mask : masks) {
+            if (matches(mask, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String mask, String name) {
+        int m = 0;
+        int n = 0;
+        int star = -1;
+        int mark = 0;
+        while (n < name.length()) {
+            if (m < mask.length() && (mask.charAt(m) == '?' || mask.charAt(m) == name.charAt(n))) {
+                m++;
+                n++;
+            } else if (m < mask.length() && mask.charAt(m) == '*') {
+                star = m++;
+                mark = n;
+            } else if (star >= 0) {
+                m = star + 1;
+                n = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (m < mask.length() && mask.charAt(m) == '*') {
+            m++;
+        }
+        return m == mask.length();
+    }
+
+    private static String literalPrefix(String mask) {
+        int end = 0;
+        while (end < mask.length() && mask.charAt(end) != '*' && mask.charAt(end) != '?') {
+            end++;
+        }
+        return mask.substring(0, end);
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * The transport carries lines between the user's socket and the connection handler.
+ */
+public interface ClientTransport {
+
+    /**
+     * asks the transport to write the lines queued in the outbound queue of the connection.
+     */
+    void requestWrite();
+
+    /**
+     * closes the connection with the user once the queued lines are written.
+     */
+    void close();
+
+    /**
+     * closes the connection with the user without waiting for the queued lines.
+     */
+    void abort();
+}
@@ -0,0 +1,15 @@
+import exception.DisconnectedException;
+
+/**
+ * The command handles one kind of line from the user, it keeps no state of its own.
+ */
+public interface Command {
+
+    /**
+     * executes the command for the user.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     * @throws DisconnectedException the user has quit
+     */
+    void execute(ConnectionHandler connectionHandler, String arguments) throws DisconnectedException;
+}
@@ -0,0 +1,22 @@
+/**
+ * The cost of a line in tokens of the flood control, worked out before the command runs.
+ */
+public interface CommandCost {
+
+    /**
+     * The cost of a line which only changes the state of its own user and gets a reply or two.
+     */
+    CommandCost ONE = (connectionHandler, arguments) -> 1;
+    /**
+     * The cost of a line which is never limited, like the answer to a PING of the server.
+     */
+    CommandCost FREE = (connectionHandler, arguments) -> 0;
+
+    /**
+     * gets the cost of a line.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     * @return the number of tokens the line takes
+     */
+    int cost(ConnectionHandler connectionHandler, String arguments);
+}
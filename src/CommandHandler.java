@@ -1,62 +1,68 @@
 import java.time.LocalDateTime;
-import java.util.Iterator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 
 import exception.DisconnectedException;
+import exception.MessageLogFullException;
 import exception.NoChannelExistsException;
 import exception.NotRegisterException;
 import exception.NoUserExistsException;
 import exception.InvalidChannelNameException;
 import exception.InvalidNickNameException;
+import exception.NickNameInUseException;
 import exception.InvalidPrivmsgArgumentsException;
 import exception.InvalidUserNameException;
 import exception.NotEnoughUserArgumentsException;
 import exception.RepeatedRegisterException;
+import exception.PasswordMismatchException;
+import exception.NoPrivilegesException;
+import exception.InvalidListArgumentsException;
+import exception.InvalidResumeTokenException;
 
 /**
  * the class handle all the different commands from user.
+ * It keeps no state, one instance serves every connection through the command registry.
  */
 public class CommandHandler {
 
-    private ConnectionHandler connectionHandler;
-    private String arguments;
-    private String serverName, nickName;
-
-    /**
-     * constructs a commandHandler.
-     * @param arguments the arguments from user
-     * @param connectionHandler the connection handler
-     */
-    public CommandHandler(String arguments, ConnectionHandler connectionHandler) {
-        this.arguments = arguments;
-        this.connectionHandler = connectionHandler;
-        serverName = connectionHandler.getServerName();
-        nickName = connectionHandler.getNickName();
-    }
-
     /**
      * handle the NICK command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public synchronized void handleNick() {
+    public void handleNick(ConnectionHandler connectionHandler, String arguments) {
         try {
+            boolean registered = connectionHandler.isRegister();
             connectionHandler.setNickName(arguments);
-            connectionHandler.getRegisteredUsers().put(arguments, connectionHandler);
+            if (!registered && connectionHandler.isRegister()) {
+                connectionHandler.sendResumeToken();
+            }
         } catch (InvalidNickNameException invalidNickNameException) {
             connectionHandler.sendError(invalidNickNameException.getMessage());
+        } catch (NickNameInUseException nickNameInUseException) {
+            connectionHandler.sendError(nickNameInUseException.getMessage());
         }
 
     }
 
     /**
      * handle the USER command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public void handleUser() {
+    public void handleUser(ConnectionHandler connectionHandler, String arguments) {
+        String serverName = connectionHandler.getServerName();
+        String nickName = connectionHandler.getNickName();
         try {
             connectionHandler.register(arguments);
             String text = "Welcome to the IRC network, " + nickName;
             String line = ":" + serverName + " " + Configuration.NICK_CODE + " " + nickName + " :" + text;
             connectionHandler.send(line);
+            if (connectionHandler.isRegister()) {
+                connectionHandler.sendResumeToken();
+            }
         } catch (InvalidUserNameException invalidUserNameException) {
             connectionHandler.sendError(invalidUserNameException.getMessage());
         } catch (NotEnoughUserArgumentsException notEnoughUserArgumentsException) {
@@ -68,47 +74,99 @@ public class CommandHandler {
 
     /**
      * handle the QUIT command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      * @throws DisconnectedException throws disconnection exception to server
      */
-    public synchronized void handleQuit() throws DisconnectedException {
+    public void handleQuit(ConnectionHandler connectionHandler, String arguments) throws DisconnectedException {
         if (connectionHandler.isRegister()) {
-            String line = ":" + nickName + " " + Configuration.QUIT_STRING;
-            connectionHandler.sendAllMessage(line);
-            Iterator<String> iterator = connectionHandler.getChannels().keySet().iterator();
-            while (iterator.hasNext()) {
-                String channelName = iterator.next();
-                connectionHandler.partChannel(channelName);
-            }
-            connectionHandler.getRegisteredUsers().remove(nickName);
+            connectionHandler.quit();
         }
         throw new DisconnectedException(" ... client has closed the connection ... ");
     }
 
+    /**
+     * handles the RESUME command, which takes over the session of a dropped connection by its token.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     */
+    public void handleResume(ConnectionHandler connectionHandler, String arguments) {
+        try {
+            connectionHandler.resume(arguments);
+        } catch (InvalidResumeTokenException invalidResumeTokenException) {
+            connectionHandler.sendError(invalidResumeTokenException.getMessage());
+        } catch (RepeatedRegisterException repeatedRegisterException) {
+            connectionHandler.sendError(repeatedRegisterException.getMessage());
+        }
+    }
+
     /**
      * handles the JOIN command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public synchronized void handleJoin() {
+    public void handleJoin(ConnectionHandler connectionHandler, String arguments) {
+        String nickName = connectionHandler.getNickName();
         try {
             if (!connectionHandler.isRegister()) {
                 throw new NotRegisterException("You need to register first");
-            } else if (connectionHandler.getChannels().containsKey(arguments)) {
-                connectionHandler.joinChannel(arguments);
-            } else {
-                connectionHandler.createChannel(arguments);
             }
-            String line = ":" + nickName + " " + Configuration.JOIN_STRING + " " + arguments;
-            connectionHandler.sendChannelMessage(arguments, line);
+            for (String channelName : splitTargets(arguments)) {
+                try {
+                    long mark = connectionHandler.joinChannel(channelName);
+                    String line = ":" + nickName + " " + Configuration.JOIN_STRING + " " + channelName;
+                    connectionHandler.sendChannelMessage(channelName, line);
+                    connectionHandler.replayHistory(channelName, mark);
+                } catch (InvalidChannelNameException invalidChannelNameException) {
+                    connectionHandler.sendError(invalidChannelNameException.getMessage());
+                }
+            }
         } catch (NotRegisterException notRegisterException) {
             connectionHandler.sendError(notRegisterException.getMessage());
-        } catch (InvalidChannelNameException invalidChannelNameException) {
-            connectionHandler.sendError(invalidChannelNameException.getMessage());
         }
     }
 
+    /**
+     * splits a comma separated list of targets, a target named more than once is kept once, at its first place.
+     * @param targets the list of targets
+     * @return the distinct targets in order
+     */
+    private static Collection<String> splitTargets(String targets) {
+        if (targets.indexOf(',') < 0) {
+            return Collections.singletonList(targets);
+        }
+        return new LinkedHashSet<String>(Arrays.asList(targets.split(",", -1)));
+    }
+
+    /**
+     * gets the cost of a JOIN or PART line to the flood control. Every channel named costs like a line sent to its
+     * members, as they all get the JOIN or PART, so a long list of channels or a busy channel costs more.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     * @return the number of tokens the line takes
+     */
+    public int joinPartCost(ConnectionHandler connectionHandler, String arguments) {
+        int cost = 0;
+        int start = 0;
+        while (start <= arguments.length()) {
+            int end = arguments.indexOf(',', start);
+            if (end < 0) {
+                end = arguments.length();
+            }
+            Channel channel = connectionHandler.getChannels().get(arguments.substring(start, end));
+            cost += fanOutCost(channel == null ? 0 : channel.size());
+            start = end + 1;
+        }
+        return cost;
+    }
+
     /**
      * handled the PART command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public synchronized void handlePart() {
+    public void handlePart(ConnectionHandler connectionHandler, String arguments) {
+        String nickName = connectionHandler.getNickName();
         try {
             if (!connectionHandler.isRegister()) {
                 throw new NotRegisterException("You need to register first");
@@ -128,24 +186,37 @@ public class CommandHandler {
 
     /**
      * handles the PRIVMSG command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public void handlePrivmsg() {
+    public void handlePrivmsg(ConnectionHandler connectionHandler, String arguments) {
         try {
             if (!connectionHandler.isRegister()) {
                 throw new NotRegisterException("You need to register first");
             } else {
-                Pattern privmsgChannelPattern = Pattern.compile("^(#\\w+)\\s:(.*)");
-                Pattern privmsgUserPattern = Pattern.compile("^([A-Za-z_][\\w]*)\\s:(.*)");
-                Matcher privmsgChannelMatcher = privmsgChannelPattern.matcher(arguments);
-                Matcher privmsgUserMatcher = privmsgUserPattern.matcher(arguments);
-
-                if (privmsgUserMatcher.matches()) {
-                    String targetNickName = privmsgUserMatcher.group(1);
-                    String message = privmsgUserMatcher.group(2);
+                int targetEnd = LineParser.privmsgTargetEnd(arguments);
+
+                if (targetEnd >= 0 && arguments.lastIndexOf(',', targetEnd) >= 0) {
+                    String message = arguments.substring(targetEnd + 2);
+                    PrivmsgBatch batch = new PrivmsgBatch(connectionHandler, message);
+                    for (String target : splitTargets(arguments.substring(0, targetEnd))) {
+                        try {
+                            batch.sendTo(target);
+                        } catch (NoUserExistsException noUserExistsException) {
+                            connectionHandler.sendError(noUserExistsException.getMessage());
+                        } catch (NoChannelExistsException noChannelException) {
+                            connectionHandler.sendError(noChannelException.getMessage());
+                        } catch (MessageLogFullException messageLogFullException) {
+                            connectionHandler.sendError(messageLogFullException.getMessage());
+                        }
+                    }
+                } else if (targetEnd >= 0 && arguments.charAt(0) != '#') {
+                    String targetNickName = arguments.substring(0, targetEnd);
+                    String message = arguments.substring(targetEnd + 2);
                     connectionHandler.sendUserPrivmsgMessage(targetNickName, message);
-                } else if (privmsgChannelMatcher.matches()) {
-                    String targetChannelName = privmsgChannelMatcher.group(1);
-                    String message = privmsgChannelMatcher.group(2);
+                } else if (targetEnd >= 0) {
+                    String targetChannelName = arguments.substring(0, targetEnd);
+                    String message = arguments.substring(targetEnd + 2);
                     connectionHandler.sendChannelPrivmsgMessage(targetChannelName, message);
                 } else {
                     throw new InvalidPrivmsgArgumentsException("Invalid arguments to PRIVMSG command");
@@ -159,30 +230,61 @@ public class CommandHandler {
             connectionHandler.sendError(noChannelException.getMessage());
         } catch (InvalidPrivmsgArgumentsException invalidPrivmsgArgumentsException) {
             connectionHandler.sendError(invalidPrivmsgArgumentsException.getMessage());
+        } catch (MessageLogFullException messageLogFullException) {
+            connectionHandler.sendError(messageLogFullException.getMessage());
+        }
+    }
+
+    /**
+     * gets the cost of a PRIVMSG line to the flood control, which grows with the number of users it reaches.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     * @return the number of tokens the line takes
+     */
+    public int privmsgCost(ConnectionHandler connectionHandler, String arguments) {
+        int targetEnd = LineParser.privmsgTargetEnd(arguments);
+        int recipients = 0;
+        int start = 0;
+        while (start < targetEnd) {
+            int end = arguments.indexOf(',', start);
+            if (end < 0 || end > targetEnd) {
+                end = targetEnd;
+            }
+            if (arguments.charAt(start) == '#') {
+                Channel channel = connectionHandler.getChannels().get(arguments.substring(start, end));
+                recipients += channel == null ? 0 : channel.size();
+            } else {
+                recipients++;
+            }
+            start = end + 1;
         }
+        return fanOutCost(recipients);
     }
 
     /**
      * handles the NAMES command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public void handleNames() {
+    public void handleNames(ConnectionHandler connectionHandler, String arguments) {
+        String serverName = connectionHandler.getServerName();
+        String nickName = connectionHandler.getNickName();
         try {
+            Channel channel = connectionHandler.getChannels().get(arguments);
             if (!connectionHandler.isRegister()) {
                 throw new NotRegisterException("You need to register first");
-            } else if (!connectionHandler.getChannels().containsKey(arguments)) {
+            } else if (channel == null) {
                 throw new NoChannelExistsException("No channel exists with that name");
             } else {
-                String replyLine = ":" + serverName + " " + Configuration.NAMES_CODE + " " + nickName + " = " + arguments + " :";
-                Iterator<String> iterator = connectionHandler.getChannels().get(arguments).iterator();
-                while (iterator.hasNext()) {
-                    String nick = iterator.next();
-                    if (iterator.hasNext()) {
-                        replyLine += (nick + " ");
-                    } else {
-                        replyLine += nick;
-                    }
-                    connectionHandler.send(replyLine);
+                String replyPrefix = ":" + serverName + " " + Configuration.NAMES_CODE + " " + nickName + " = "
+                        + arguments + " :";
+                int maxLength = Configuration.MAX_LINE_LENGTH - 2 - replyPrefix.length() + nickName.length()
+                        - Configuration.MAX_NICK_LENGTH;
+                for (String names : channel.getNames(maxLength)) {
+                    connectionHandler.send(replyPrefix + names);
                 }
+                connectionHandler.send(":" + serverName + " " + Configuration.NAMES_FINAL_CODE + " " + nickName + " "
+                        + arguments + " :End of NAMES list");
             }
         } catch (NotRegisterException notRegisterException) {
             connectionHandler.sendError(notRegisterException.getMessage());
@@ -191,22 +293,58 @@ public class CommandHandler {
         }
     }
 
+    /**
+     * gets the cost of a NAMES line to the flood control, which grows with the size of the channel.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     * @return the number of tokens the line takes
+     */
+    public int namesCost(ConnectionHandler connectionHandler, String arguments) {
+        Channel channel = connectionHandler.getChannels().get(arguments);
+        return fanOutCost(channel == null ? 0 : channel.size());
+    }
+
     /**
      * handle the LIST command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public void handleList() {
-        Iterator<String> iterator = connectionHandler.getChannels().keySet().iterator();
-        while (iterator.hasNext()) {
-            String channel = iterator.next();
-            connectionHandler.send(":" + serverName + " " + Configuration.LIST_EACH_CODE + " " + nickName + " " + channel);
+    public void handleList(ConnectionHandler connectionHandler, String arguments) {
+        try {
+            connectionHandler.startListing(new ChannelListing(connectionHandler.getChannelIndex(), arguments));
+        } catch (InvalidListArgumentsException invalidListArgumentsException) {
+            connectionHandler.sendError(invalidListArgumentsException.getMessage());
         }
-        connectionHandler.send(":" + serverName + " " + Configuration.LIST_FINAL_CODE + " " + nickName + " :End of LIST");
+    }
+
+    /**
+     * gets the cost of a LIST line to the flood control, which grows with the number of channels.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     * @return the number of tokens the line takes
+     */
+    public int listCost(ConnectionHandler connectionHandler, String arguments) {
+        return fanOutCost(connectionHandler.getChannels().size());
+    }
+
+    /**
+     * gets the cost of a line which makes the server write many lines: one token, and one more for every
+     * irc.flood.fanOutPerToken lines.
+     * @param lines the number of lines written for it
+     * @return the number of tokens
+     */
+    private static int fanOutCost(int lines) {
+        return 1 + lines / Configuration.FLOOD_FAN_OUT_PER_TOKEN;
     }
 
     /**
      * handle the TIME command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public void handleTime() {
+    public void handleTime(ConnectionHandler connectionHandler, String arguments) {
+        String serverName = connectionHandler.getServerName();
+        String nickName = connectionHandler.getNickName();
         String text = LocalDateTime.now().toString();
         String line = ":" + serverName + " " + Configuration.TIME_CODE + " " + nickName + " :" + text;
         connectionHandler.send(line);
@@ -214,8 +352,12 @@ public class CommandHandler {
 
     /**
      * handles the INFO command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public void handleInfo() {
+    public void handleInfo(ConnectionHandler connectionHandler, String arguments) {
+        String serverName = connectionHandler.getServerName();
+        String nickName = connectionHandler.getNickName();
         String text = "";
         String line = ":" + serverName + " " + Configuration.INFO_CODE + " " + nickName + " :" + text;
         connectionHandler.send(line);
@@ -223,12 +365,74 @@ public class CommandHandler {
 
     /**
      * handles the PING command.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
      */
-    public void handlePing() {
+    public void handlePing(ConnectionHandler connectionHandler, String arguments) {
         String text = arguments;
         String line = Configuration.PING_REPLY + " " + text;
         connectionHandler.send(line);
     }
 
+    /**
+     * handles the PONG command, the answer to a PING of the server.
+     * Any line from the user already counts as the answer, so there is nothing left to do.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     */
+    public void handlePong(ConnectionHandler connectionHandler, String arguments) {
+    }
+
+    /**
+     * handles the OPER command, the name and password are set with -Dirc.oper.name and -Dirc.oper.password.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     */
+    public void handleOper(ConnectionHandler connectionHandler, String arguments) {
+        String serverName = connectionHandler.getServerName();
+        String nickName = connectionHandler.getNickName();
+        try {
+            if (!connectionHandler.isRegister()) {
+                throw new NotRegisterException("You need to register first");
+            }
+            int separator = arguments.indexOf(' ');
+            if (Configuration.OPER_NAME == null || Configuration.OPER_PASSWORD == null || separator < 0
+                    || !arguments.substring(0, separator).equals(Configuration.OPER_NAME)
+                    || !arguments.substring(separator + 1).equals(Configuration.OPER_PASSWORD)) {
+                throw new PasswordMismatchException("Password incorrect");
+            }
+            connectionHandler.setOperator();
+            String line = ":" + serverName + " " + Configuration.OPER_CODE + " " + nickName
+                    + " :You are now an IRC operator";
+            connectionHandler.send(line);
+        } catch (NotRegisterException notRegisterException) {
+            connectionHandler.sendError(notRegisterException.getMessage());
+        } catch (PasswordMismatchException passwordMismatchException) {
+            connectionHandler.sendError(passwordMismatchException.getMessage());
+        }
+    }
 
+    /**
+     * handles the STATS command, which reports the server metrics to the operator.
+     * @param connectionHandler the connection of the user
+     * @param arguments the arguments from user
+     */
+    public void handleStats(ConnectionHandler connectionHandler, String arguments) {
+        String serverName = connectionHandler.getServerName();
+        String nickName = connectionHandler.getNickName();
+        try {
+            if (!connectionHandler.isOperator()) {
+                throw new NoPrivilegesException("Permission Denied- You're not an IRC operator");
+            }
+            for (String text : connectionHandler.getMetrics().getReport()) {
+                connectionHandler.send(":" + serverName + " " + Configuration.STATS_EACH_CODE + " " + nickName
+                        + " :" + text);
+            }
+            String query = arguments.isEmpty() ? "*" : arguments;
+            connectionHandler.send(":" + serverName + " " + Configuration.STATS_FINAL_CODE + " " + nickName + " "
+                    + query + " :End of STATS report");
+        } catch (NoPrivilegesException noPrivilegesException) {
+            connectionHandler.sendError(noPrivilegesException.getMessage());
+        }
+    }
 }
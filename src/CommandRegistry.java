@@ -0,0 +1,200 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The registry maps command names to the commands handling them.
+ * The names live in an open addressing table which is looked up straight from the characters of the line, so
+ * dispatching a line allocates nothing. Registering copies the table, lookups never lock.
+ * Every name has its statistics next to its command, they are kept when the command is replaced, and the cost its
+ * lines take from the flood control.
+ */
+public class CommandRegistry {
+
+    private volatile Entry[] table = new Entry[16];
+    private int size;
+
+    /**
+     * creates a registry with every command in Configuration.
+     * @return the registry
+     */
+    public static CommandRegistry createDefault() {
+        CommandHandler commandHandler = new CommandHandler();
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(Configuration.NICK_STRING, commandHandler::handleNick);
+        registry.register(Configuration.USER_STRING, commandHandler::handleUser);
+        registry.register(Configuration.QUIT_STRING, commandHandler::handleQuit, CommandCost.FREE);
+        registry.register(Configuration.JOIN_STRING, commandHandler::handleJoin, commandHandler::joinPartCost);
+        registry.register(Configuration.PART_STRING, commandHandler::handlePart, commandHandler::joinPartCost);
+        registry.register(Configuration.PRIVMSG_STRING, commandHandler::handlePrivmsg, commandHandler::privmsgCost);
+        registry.register(Configuration.NAMES_STRING, commandHandler::handleNames, commandHandler::namesCost);
+        registry.register(Configuration.LIST_STRING, commandHandler::handleList, commandHandler::listCost);
+        registry.register(Configuration.TIME_STRING, commandHandler::handleTime);
+        registry.register(Configuration.INFO_STRING, commandHandler::handleInfo);
+        registry.register(Configuration.PING_STRING, commandHandler::handlePing);
+        registry.register(Configuration.PING_REPLY, commandHandler::handlePong, CommandCost.FREE);
+        registry.register(Configuration.OPER_STRING, commandHandler::handleOper);
+        registry.register(Configuration.STATS_STRING, commandHandler::handleStats);
+        registry.register(Configuration.RESUME_STRING, commandHandler::handleResume);
+        return registry;
+    }
+
+    /**
+     * adds a command whose lines cost one token, or replaces the command registered with the same name.
+     * @param name the command name
+     * @param command the command
+     */
+    public void register(String name, Command command) {
+        register(name, command, CommandCost.ONE);
+    }
+
+    /**
+     * adds a command, or replaces the command registered with the same name.
+     * @param name the command name
+     * @param command the command
+     * @param cost the cost of its lines to the flood control
+     */
+    public synchronized void register(String name, Command command, CommandCost cost) {
+        Entry[] current = table;
+        int capacity = current.length;
+        if ((size + 1) * 2 > capacity) {
+            capacity *= 2;
+        }
+        Entry[] copy = new Entry[capacity];
+        CommandStats stats = null;
+        for (Entry entry : current) {
+            if (entry == null) {
+                continue;
+            }
+            if (entry.name.equals(name)) {
+                stats = entry.stats;
+            } else {
+                insert(copy, entry);
+            }
+        }
+        boolean replaced = stats != null;
+        insert(copy, new Entry(name, command, cost, replaced ? stats : new CommandStats(name)));
+        if (!replaced) {
+            size++;
+        }
+        table = copy;
+    }
+
+    /**
+     * finds the command by the name between two indexes of the line.
+     * @param line the line from the user
+     * @param start the index of the first character of the name
+     * @param end the index after the last character of the name
+     * @return the command, or null if no command has the name
+     */
+    public Command find(String line, int start, int end) {
+        Entry entry = findEntry(line, start, end);
+        return entry == null ? null : entry.command;
+    }
+
+    /**
+     * finds the command and its statistics by the name between two indexes of the line.
+     * @param line the line from the user
+     * @param start the index of the first character of the name
+     * @param end the index after the last character of the name
+     * @return the entry, or null if no command has the name
+     */
+    public Entry findEntry(String line, int start, int end) {
+        Entry[] current = table;
+        int mask = current.length - 1;
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            Entry entry = current[i];
+            if (entry == null) {
+                return null;
+            }
+            if (entry.hash == hash && entry.name.length() == length && line.regionMatches(start, entry.name, 0, length)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * finds the command by its name.
+     * @param name the command name
+     * @return the command, or null if no command has the name
+     */
+    public Command find(String name) {
+        return find(name, 0, name.length());
+    }
+
+    /**
+     * gets the statistics of every command, sorted by name.
+     * @return the statistics
+     */
+    public List<CommandStats> getStats() {
+        List<CommandStats> stats = new ArrayList<CommandStats>();
+        for (Entry entry : table) {
+            if (entry != null) {
+                stats.add(entry.stats);
+            }
+        }
+        stats.sort(Comparator.comparing(CommandStats::getName));
+        return stats;
+    }
+
+    private static void insert(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+        int i = spread(entry.hash) & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The entry of the table, with the hash of the name computed like String.hashCode.
+     */
+    public static class Entry {
+        private final String name;
+        private final int hash;
+        private final Command command;
+        private final CommandCost cost;
+        private final CommandStats stats;
+
+        Entry(String name, Command command, CommandCost cost, CommandStats stats) {
+            this.name = name;
+            this.hash = name.hashCode();
+            this.command = command;
+            this.cost = cost;
+            this.stats = stats;
+        }
+
+        /**
+         * gets the command.
+         * @return the command
+         */
+        public Command getCommand() {
+            return command;
+        }
+
+        /**
+         * gets the cost of the lines of the command.
+         * @return the cost
+         */
+        public CommandCost getCost() {
+            return cost;
+        }
+
+        /**
+         * gets the statistics of the command.
+         * @return the statistics
+         */
+        public CommandStats getStats() {
+            return stats;
+        }
+    }
+}
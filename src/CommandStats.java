@@ -0,0 +1,69 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of one command: how often it ran, how often it replied with an error, and how long it took.
+ * The registry keeps one instance per command name, so recording looks nothing up.
+ */
+public class CommandStats {
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Histogram latency = new Histogram();
+
+    /**
+     * constructs empty statistics.
+     * @param name the command name
+     */
+    public CommandStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * records one run of the command.
+     * @param nanos the time the command took in nanoseconds
+     */
+    public void record(long nanos) {
+        count.increment();
+        latency.record(nanos);
+    }
+
+    /**
+     * records one error reply of the command.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * gets the command name.
+     * @return the command name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * gets the number of runs.
+     * @return the number of runs
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * gets the number of error replies.
+     * @return the number of errors
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * gets the handling time in nanoseconds.
+     * @return the latency histogram
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+}
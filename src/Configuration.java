@@ -46,6 +46,23 @@ public abstract class Configuration {
      * The PING command.
      */
     public static final String PING_STRING = "PING";
+    /**
+     * The OPER command.
+     */
+    public static final String OPER_STRING = "OPER";
+    /**
+     * The STATS command.
+     */
+    public static final String STATS_STRING = "STATS";
+    /**
+     * The RESUME command.
+     */
+    public static final String RESUME_STRING = "RESUME";
+
+    /**
+     * The ERROR message sent before the server closes a link.
+     */
+    public static final String ERROR_STRING = "ERROR";
 
     /**
      * The reply message for PING command.
@@ -56,10 +73,18 @@ public abstract class Configuration {
      * The successful reply code of NICK command.
      */
     public static final String NICK_CODE = "001";
+    /**
+     * The reply code of the resume token sent after registration.
+     */
+    public static final String RESUME_TOKEN_CODE = "009";
     /**
      * The successful reply code of NAMES command.
      */
     public static final String NAMES_CODE = "353";
+    /**
+     * The reply code of NAMES command in the last line.
+     */
+    public static final String NAMES_FINAL_CODE = "366";
     /**
      * The successful reply code of LIST command in each line.
      */
@@ -76,11 +101,229 @@ public abstract class Configuration {
      * The successful reply code of INFO command.
      */
     public static final String INFO_CODE = "371";
+    /**
+     * The successful reply code of OPER command.
+     */
+    public static final String OPER_CODE = "381";
+    /**
+     * The reply code of STATS command in each line.
+     */
+    public static final String STATS_EACH_CODE = "249";
+    /**
+     * The reply code of STATS command in the last line.
+     */
+    public static final String STATS_FINAL_CODE = "219";
     /**
      * The reply code of ERROR.
      */
     public static final String ERROR_CODE = "400";
 
+    /**
+     * The maximum length of a line to the user, including the CR LF.
+     */
+    public static final int MAX_LINE_LENGTH = 512;
+    /**
+     * The maximum length of a nickname.
+     */
+    public static final int MAX_NICK_LENGTH = 9;
+    /**
+     * The maximum length of a channel name, as in RFC 2812. A longer name would leave no room for the nicknames in a
+     * NAMES reply of 512 bytes.
+     */
+    public static final int MAX_CHANNEL_NAME_LENGTH = 50;
 
+    /**
+     * The transport mode with one blocking thread per connection.
+     */
+    public static final String BLOCKING_MODE_STRING = "blocking";
+    /**
+     * The transport mode with one blocking virtual thread per connection.
+     */
+    public static final String VIRTUAL_MODE_STRING = "virtual";
+    /**
+     * The transport mode with a few selector event loops.
+     */
+    public static final String NIO_MODE_STRING = "nio";
 
+    /**
+     * The number of event loop threads in the nio mode.
+     */
+    public static final int EVENT_LOOP_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * The number of threads accepting connections.
+     */
+    public static final int ACCEPT_THREADS = Math.max(1, Integer.getInteger("irc.accept.threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors())));
+    /**
+     * Whether every accepting thread gets its own socket bound to the port with SO_REUSEPORT, instead of all of them
+     * sharing one. Another server of the same user can then bind the port too.
+     */
+    public static final boolean ACCEPT_REUSE_PORT = Boolean.getBoolean("irc.accept.reusePort");
+    /**
+     * The length of the queue of connections the kernel has set up but the server has not accepted yet.
+     */
+    public static final int ACCEPT_BACKLOG = Integer.getInteger("irc.accept.backlog", 4096);
+    /**
+     * The most connections the server keeps open, the next ones are refused, 0 does not limit.
+     */
+    public static final int MAX_CONNECTIONS = Integer.getInteger("irc.maxConnections", 0);
+    /**
+     * The most connections one address keeps open, the next ones are refused, 0 does not limit.
+     */
+    public static final int MAX_CONNECTIONS_PER_ADDRESS = Integer.getInteger("irc.maxConnectionsPerAddress", 0);
+    /**
+     * The size of the read buffers, which the connections borrow from a shared pool while they read.
+     */
+    public static final int READ_BUFFER_SIZE = 8192;
+    /**
+     * The maximum number of free read buffers kept in the pool.
+     */
+    public static final int READ_BUFFER_POOL_SIZE = Integer.getInteger("irc.readBuffers.pooled", 256);
+    /**
+     * The size of the buffer the queued lines are copied into before one socket write.
+     */
+    public static final int WRITE_BUFFER_SIZE = 16384;
+    /**
+     * The maximum number of free write buffers kept in the pool of the blocking transports.
+     */
+    public static final int WRITE_BUFFER_POOL_SIZE = Integer.getInteger("irc.writeBuffers.pooled", 256);
+    /**
+     * The number of lines waiting to be written to one user above which the backpressure policy fires.
+     */
+    public static final int OUTBOUND_MAX_LINES = Integer.getInteger("irc.outbound.maxLines", 1024);
+    /**
+     * The number of bytes waiting to be written to one user above which the backpressure policy fires.
+     */
+    public static final long OUTBOUND_MAX_BYTES = Long.getLong("irc.outbound.maxBytes", 512 * 1024);
+    /**
+     * The backpressure policy for slow users, one of drop-oldest, disconnect or shed-privmsg.
+     */
+    public static final String BACKPRESSURE_POLICY = System.getProperty("irc.backpressure", "disconnect");
+    /**
+     * The number of LIST replies queued at once, the next ones are queued when the user has read them.
+     */
+    public static final int LIST_CHUNK_LINES = Integer.getInteger("irc.list.chunkLines", 100);
+    /**
+     * The number of channels one LIST chunk looks at, listed or filtered out, before it stops.
+     */
+    public static final int LIST_CHUNK_SCAN = Integer.getInteger("irc.list.chunkScan", 1000);
+    /**
+     * The name of the operator for the OPER command, OPER is refused if it is not set.
+     */
+    public static final String OPER_NAME = System.getProperty("irc.oper.name");
+    /**
+     * The password of the operator for the OPER command.
+     */
+    public static final String OPER_PASSWORD = System.getProperty("irc.oper.password");
+    /**
+     * The lowest level of the logged events, one of DEBUG, INFO, WARN or ERROR.
+     */
+    public static final String LOG_LEVEL = System.getProperty("irc.log.level", "INFO");
+    /**
+     * The log format writing one JSON object per line.
+     */
+    public static final String LOG_FORMAT_JSON_STRING = "json";
+    /**
+     * The format of the log, text or json.
+     */
+    public static final String LOG_FORMAT = System.getProperty("irc.log.format", "text");
+    /**
+     * The number of log events which can wait for the log writer, the events above it are dropped.
+     */
+    public static final int LOG_BUFFER_EVENTS = Integer.getInteger("irc.log.bufferEvents", 8192);
+    /**
+     * The number of PRIVMSG lines a channel keeps to replay on JOIN, 0 keeps none. It is 0 by default, as every
+     * joiner gets the recent lines of a channel, so the history should only be turned on where that is wanted.
+     */
+    public static final int HISTORY_LINES = Integer.getInteger("irc.history.lines", 0);
+    /**
+     * The number of history lines of single channels, as a comma separated list like "#ops:500,#bots:0".
+     */
+    public static final String HISTORY_CHANNEL_LINES = System.getProperty("irc.history.channelLines", "");
+    /**
+     * The memory all channel histories may take together, the coldest channels lose theirs above it.
+     */
+    public static final long HISTORY_MAX_BYTES = Long.getLong("irc.history.maxBytes", 64L * 1024 * 1024);
+    /**
+     * Whether the channel histories are kept in direct buffers outside the garbage collected heap.
+     */
+    public static final boolean HISTORY_OFF_HEAP = Boolean.getBoolean("irc.history.offHeap");
+    /**
+     * The directory of the durable message log, the log is off if it is not set.
+     */
+    public static final String MESSAGE_LOG_DIR = System.getProperty("irc.messageLog.dir");
+    /**
+     * The size of one segment file of the message log.
+     */
+    public static final int MESSAGE_LOG_SEGMENT_BYTES = Integer.getInteger("irc.messageLog.segmentBytes",
+            64 * 1024 * 1024);
+    /**
+     * The longest time in milliseconds a logged message waits to be written through to the disk.
+     */
+    public static final long MESSAGE_LOG_FSYNC_MILLIS = Long.getLong("irc.messageLog.fsyncMillis", 100);
+    /**
+     * The size of the messages which can wait for the log writer, as lines of the longest length. The messages
+     * beyond it are counted as overflow and handled by the overflow policy.
+     */
+    public static final long MESSAGE_LOG_MAX_PENDING_BYTES = Long.getLong("irc.messageLog.maxPendingBytes",
+            8 * 1024 * 1024);
+    /**
+     * The overflow policy of the message log, drop delivers the message and logs a gap marker in its place, refuse
+     * does not deliver it and tells the sender.
+     */
+    public static final String MESSAGE_LOG_OVERFLOW_POLICY = System.getProperty("irc.messageLog.overflow", "drop");
+    /**
+     * The time in milliseconds the session of a dropped user is kept for resuming, 0 turns resuming off.
+     */
+    public static final long SESSION_GRACE_MILLIS = Long.getLong("irc.session.graceMillis", 60000);
+    /**
+     * The number of lines kept for a parked session, the oldest are dropped above it.
+     */
+    public static final int SESSION_MISSED_LINES = Integer.getInteger("irc.session.missedLines", 256);
+    /**
+     * The time in milliseconds between two ticks of the timer wheel.
+     */
+    public static final long TIMER_TICK_MILLIS = 100;
+    /**
+     * The number of slots of the timer wheel.
+     */
+    public static final int TIMER_SLOTS = 512;
+    /**
+     * The time in milliseconds an aborted connection has to write its last line before its socket is closed.
+     */
+    public static final long CLOSE_DRAIN_MILLIS = 1000;
+    /**
+     * The time in milliseconds without a line from the user after which the server sends a PING, 0 sends none.
+     */
+    public static final long PING_IDLE_MILLIS = Long.getLong("irc.ping.idleMillis", 120000);
+    /**
+     * The time in milliseconds the user has to answer the PING of the server before the connection is closed.
+     */
+    public static final long PING_TIMEOUT_MILLIS = Long.getLong("irc.ping.timeoutMillis", 60000);
+    /**
+     * The tokens per second the flood control gives one connection, 0 does not limit connections.
+     */
+    public static final long FLOOD_RATE = Long.getLong("irc.flood.rate", 10);
+    /**
+     * The tokens one connection can spend at once.
+     */
+    public static final int FLOOD_BURST = Integer.getInteger("irc.flood.burst", 40);
+    /**
+     * The tokens per second the flood control gives all connections from one address, 0 does not limit addresses.
+     * Addresses are not limited by default, as many users behind one NAT or proxy share an address.
+     */
+    public static final long FLOOD_ADDRESS_RATE = Long.getLong("irc.flood.addressRate", 0);
+    /**
+     * The tokens all connections from one address can spend at once.
+     */
+    public static final int FLOOD_ADDRESS_BURST = Integer.getInteger("irc.flood.addressBurst", 160);
+    /**
+     * The number of recipients or reply lines of a line which cost one more token, at least 1.
+     */
+    public static final int FLOOD_FAN_OUT_PER_TOKEN = Math.max(1, Integer.getInteger("irc.flood.fanOutPerToken",
+            100));
+    /**
+     * The flood policy for users over their limit, delay stops reading from them, disconnect closes the link.
+     */
+    public static final String FLOOD_POLICY = System.getProperty("irc.flood.policy", "delay");
 }
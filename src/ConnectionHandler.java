@@ -1,140 +1,271 @@
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.IOException;
-import java.net.Socket;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import exception.DisconnectedException;
+import exception.MessageLogFullException;
 import exception.NoChannelExistsException;
 import exception.NoUserExistsException;
 import exception.InvalidChannelNameException;
 import exception.InvalidNickNameException;
+import exception.NickNameInUseException;
 import exception.InvalidUserNameException;
 import exception.NotEnoughUserArgumentsException;
 import exception.RepeatedRegisterException;
 import exception.InvalidCommandInputException;
+import exception.InvalidResumeTokenException;
 
 /**
- * The class handles the user's connection, and extends the thread to support many users connect at same time.
+ * The class handles the user's connection, the lines are delivered by the transport it is attached to.
  */
-public class ConnectionHandler extends Thread {
+public class ConnectionHandler {
 
-    private Socket conn;
     private String serverName;
-    private ConcurrentHashMap<String, ArrayList<String>> channels;
+    private ConcurrentHashMap<String, Channel> channels;
+    private ConcurrentSkipListMap<String, Channel> channelIndex;
     private ConcurrentHashMap<String, ConnectionHandler> registeredUsers;
-
-    private InputStream is;
-    private OutputStream os;
-    private BufferedReader br;
-    private PrintWriter pw;
-    private String nickName = "*";
+    private UserTable userTable;
+    private HistoryStore historyStore;
+    private MessageLog messageLog;
+    private SessionStore sessionStore;
+    private TimerWheel timerWheel;
+    private FloodControl floodControl;
+    private AdmissionControl admissionControl;
+    private CommandRegistry commandRegistry;
+    private ServerMetrics metrics;
+    private ClientTransport transport;
+    private OutboundQueue outboundQueue = new OutboundQueue(Configuration.OUTBOUND_MAX_LINES,
+            Configuration.OUTBOUND_MAX_BYTES, BackpressurePolicy.fromString(Configuration.BACKPRESSURE_POLICY));
+
+    private Set<Channel> joinedChannels = ConcurrentHashMap.newKeySet();
+    private int id = -1;
+    private IrcMessage message = new IrcMessage();
+    private CommandStats currentStats;
+    private AtomicBoolean open = new AtomicBoolean(true);
+    private AtomicReference<ChannelListing> pendingListing = new AtomicReference<ChannelListing>();
+    private boolean operator;
+    private String resumeToken;
+    private volatile ParkedSession parkedSession;
+    private volatile long lastActivity = System.currentTimeMillis();
+    private long pingSentAt;
+    private volatile TimerWheel.Timeout idleTimeout;
+    private InetAddress remoteAddress;
+    private TokenBucket floodBucket;
+    private TokenBucket addressBucket;
+    private long readDelayNanos;
+    private boolean throttled;
+    private volatile String nickName = "*";
     private String userName;
     private String realName;
 
     /**
      * constructs a connection with server.
-     * @param serverName the server name
-     * @param channels the current channels existing in the server
-     * @param registeredUsers the current users existing in the server
-     * @param conn the socket used to communicate with server
-     */
-    public ConnectionHandler(String serverName, ConcurrentHashMap<String, ArrayList<String>> channels,
-                             ConcurrentHashMap<String, ConnectionHandler> registeredUsers, Socket conn) {
-        this.serverName = serverName;
-        this.channels = channels;
-        this.registeredUsers = registeredUsers;
-        this.conn = conn;
+     * @param context the state shared by every connection of the server
+     * @param transport the transport used to communicate with user
+     */
+    public ConnectionHandler(ServerContext context, ClientTransport transport) {
+        this(context, transport, null);
+    }
 
-        try {
-            is = conn.getInputStream();
-            os = conn.getOutputStream();
-            br = new BufferedReader(new InputStreamReader(is));
-            pw = new PrintWriter(new OutputStreamWriter(os));
-        } catch (IOException ioe) {
-            System.out.println("ConnectionHandler: " + ioe.getMessage());
-            cleanup();
+    /**
+     * constructs a connection with server from a known address, which shares the flood limit of the address.
+     * The connection must have been admitted by the admission control, it is counted down there when it closes.
+     * @param context the state shared by every connection of the server
+     * @param transport the transport used to communicate with user
+     * @param remoteAddress the address of the user, or null if it is unknown
+     */
+    public ConnectionHandler(ServerContext context, ClientTransport transport, InetAddress remoteAddress) {
+        this.serverName = context.getServerName();
+        this.channels = context.getChannels();
+        this.channelIndex = context.getChannelIndex();
+        this.registeredUsers = context.getRegisteredUsers();
+        this.userTable = context.getUserTable();
+        this.historyStore = context.getHistoryStore();
+        this.messageLog = context.getMessageLog();
+        this.sessionStore = context.getSessionStore();
+        this.timerWheel = context.getTimerWheel();
+        this.floodControl = context.getFloodControl();
+        this.admissionControl = context.getAdmissionControl();
+        this.commandRegistry = context.getCommandRegistry();
+        this.metrics = context.getMetrics();
+        this.transport = transport;
+        this.remoteAddress = remoteAddress;
+        this.floodBucket = floodControl.newConnectionBucket();
+        this.addressBucket = floodControl.attach(remoteAddress);
+        metrics.connectionOpened();
+        if (Configuration.PING_IDLE_MILLIS > 0) {
+            idleTimeout = timerWheel.schedule(this::checkIdle, Configuration.PING_IDLE_MILLIS);
         }
     }
 
     /**
-     * handles the user's request.
+     * records that bytes arrived from the user, which also counts as the answer to a PING of the server.
      */
-    public void run() {
-        System.out.println("new ConnectionHandler thread started ... ");
-        try {
-            handleClientRequest();
-        } catch (Exception e) {
-            cleanup();
+    public void recordActivity() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * checks the connection on the timer wheel: a user idle for too long gets a PING, and a user who does not
+     * answer it in time is disconnected. The check always puts itself back on the wheel for the next deadline, so
+     * a busy connection costs one timer per idle period, not one per line.
+     */
+    private void checkIdle() {
+        if (!open.get()) {
+            return;
         }
+        long now = System.currentTimeMillis();
+        long last = lastActivity;
+        if (pingSentAt != 0 && last < pingSentAt) {
+            long waited = now - pingSentAt;
+            if (waited >= Configuration.PING_TIMEOUT_MILLIS) {
+                ServerLog.info("ConnectionHandler", "ping timeout, disconnecting", nickName);
+                String errorLine = Configuration.ERROR_STRING + " :Closing link: " + nickName + " (Ping timeout)";
+                outboundQueue.closeWith(new EncodedLine(errorLine, false));
+                transport.abort();
+                return;
+            }
+            idleTimeout = timerWheel.schedule(this::checkIdle, Configuration.PING_TIMEOUT_MILLIS - waited);
+            return;
+        }
+        pingSentAt = 0;
+        long idle = now - last;
+        if (idle < Configuration.PING_IDLE_MILLIS) {
+            idleTimeout = timerWheel.schedule(this::checkIdle, Configuration.PING_IDLE_MILLIS - idle);
+            return;
+        }
+        pingSentAt = now;
+        send(Configuration.PING_STRING + " :" + serverName);
+        idleTimeout = timerWheel.schedule(this::checkIdle, Configuration.PING_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * starts a batch of lines read together, the writer waits for all of their replies.
+     * The event loop of the nio mode writes after it has handled every read anyway, so only the blocking writer
+     * has to be held back.
+     */
+    public void beginBatch() {
+        outboundQueue.hold();
     }
 
-    private void handleClientRequest() throws DisconnectedException, IOException {
-        while (true) {
+    /**
+     * ends the batch of lines and lets the writer write every reply queued during it with as few writes as fit.
+     */
+    public void endBatch() {
+        outboundQueue.release();
+    }
+
+    /**
+     * handles one line of the user's request from the bytes it was read as.
+     * A line of ASCII only, which most lines are, is copied into the string without going through a charset decoder.
+     * @param bytes the bytes holding the line
+     * @param start the index of the first byte of the line
+     * @param end the index after the last byte of the line, without the line ending
+     * @throws DisconnectedException the user has quit
+     */
+    public void handleLine(byte[] bytes, int start, int end) throws DisconnectedException {
+        boolean ascii = true;
+        for (int i = start; i < end && ascii; i++) {
+            ascii = bytes[i] >= 0;
+        }
+        Charset charset = ascii ? StandardCharsets.ISO_8859_1 : Charset.defaultCharset();
+        handleLine(new String(bytes, start, end - start, charset));
+    }
+
+    /**
+     * handles one line of the user's request.
+     * @param line the line read by the transport
+     * @throws DisconnectedException the user has quit
+     */
+    public void handleLine(String line) throws DisconnectedException {
+        try {
+            if (!LineParser.parse(line, message) || message.hasPrefix()) {
+                throw new InvalidCommandInputException("invalid command line input!");
+            }
+            CommandRegistry.Entry entry = commandRegistry.findEntry(line, message.getCommandStart(),
+                    message.getCommandEnd());
+            if (entry == null) {
+                metrics.recordUnknownCommand();
+                throw new InvalidCommandInputException("cannot find the command!");
+            }
+            limitFlood(entry);
+            currentStats = entry.getStats();
+            long start = System.nanoTime();
             try {
-                String line = br.readLine();
-                Pattern pattern = Pattern.compile("^([A-Z]+)\\s?(.*)");
-                Matcher matcher = pattern.matcher(line);
-                String command, arguments;
-
-                if (matcher.matches()) {
-                    command = matcher.group(1);
-                    arguments = matcher.group(2);
-                } else {
-                    throw new InvalidCommandInputException("invalid command line input!");
-                }
+                entry.getCommand().execute(this, message.getArguments());
+            } finally {
+                currentStats.record(System.nanoTime() - start);
+                currentStats = null;
+            }
+        } catch (InvalidCommandInputException invalidCommandInputException) {
+            sendError(invalidCommandInputException.getMessage());
+        }
+    }
 
-                CommandHandler commandHandler = new CommandHandler(arguments, this);
-
-                switch (command) {
-                    case Configuration.NICK_STRING:
-                        commandHandler.handleNick();
-                        break;
-                    case Configuration.USER_STRING:
-                        commandHandler.handleUser();
-                        break;
-                    case Configuration.QUIT_STRING:
-                        commandHandler.handleQuit();
-                        break;
-                    case Configuration.JOIN_STRING:
-                        commandHandler.handleJoin();
-                        break;
-                    case Configuration.PART_STRING:
-                        commandHandler.handlePart();
-                        break;
-                    case Configuration.PRIVMSG_STRING:
-                        commandHandler.handlePrivmsg();
-                        break;
-                    case Configuration.NAMES_STRING:
-                        commandHandler.handleNames();
-                        break;
-                    case Configuration.LIST_STRING:
-                        commandHandler.handleList();
-                        break;
-                    case Configuration.TIME_STRING:
-                        commandHandler.handleTime();
-                        break;
-                    case Configuration.INFO_STRING:
-                        commandHandler.handleInfo();
-                        break;
-                    case Configuration.PING_STRING:
-                        commandHandler.handlePing();
-                        break;
-                    default:
-                        throw new InvalidCommandInputException("cannot find the command!");
-                }
-            } catch (InvalidCommandInputException invalidCommandInputException) {
-                sendError(invalidCommandInputException.getMessage());
+    /**
+     * takes the cost of a line from the token buckets of the connection and of its address, before the command runs.
+     * A line over the limit is still handled under the delay policy, but the lines after it wait and reading stops
+     * until the owed tokens are paid back, so the socket buffers fill and the user slows down to the rate of its
+     * bucket. Under the disconnect policy it closes the link.
+     * @param entry the command of the line
+     * @throws DisconnectedException the link is closed for flooding
+     */
+    private void limitFlood(CommandRegistry.Entry entry) throws DisconnectedException {
+        if (floodBucket == null && addressBucket == null) {
+            return;
+        }
+        int cost = floodControl.limitCost(entry.getCost().cost(this, message.getArguments()));
+        if (cost <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (floodControl.isDelaying()) {
+            long delay = floodBucket == null ? 0 : floodBucket.take(cost, now);
+            if (addressBucket != null) {
+                delay = Math.max(delay, addressBucket.take(cost, now));
+            }
+            if (delay > 0) {
+                readDelayNanos = Math.max(readDelayNanos, delay);
+                metrics.recordThrottledLine(!throttled);
+                throttled = true;
             }
+            return;
         }
+        if ((floodBucket == null || floodBucket.tryTake(cost, now))
+                && (addressBucket == null || addressBucket.tryTake(cost, now))) {
+            return;
+        }
+        metrics.recordFloodDisconnect();
+        ServerLog.info("ConnectionHandler", "flooding, disconnecting", nickName);
+        String errorLine = Configuration.ERROR_STRING + " :Closing link: " + nickName + " (Excess Flood)";
+        outboundQueue.closeWith(new EncodedLine(errorLine, false));
+        transport.abort();
+        throw new DisconnectedException(" ... client was disconnected for flooding ... ");
+    }
+
+    /**
+     * checks whether a line has put the user over its flood limit, so no more of its lines are handled for now.
+     * @return the result of check
+     */
+    public boolean isReadDelayed() {
+        return readDelayNanos > 0;
+    }
+
+    /**
+     * gets the time the transport has to stop reading for the lines handled since the last call.
+     * @return the time in milliseconds, 0 if reading goes on at once
+     */
+    public long takeReadDelayMillis() {
+        long delay = readDelayNanos;
+        readDelayNanos = 0;
+        return (delay + 999999) / 1000000;
     }
 
     /**
@@ -142,28 +273,57 @@ public class ConnectionHandler extends Thread {
      * @param line the message content
      */
     public void sendAllMessage(String line) {
-        Iterator<String> iterator = registeredUsers.keySet().iterator();
-        while (iterator.hasNext()) {
-            String targetNickName = iterator.next();
-            sendUserMessage(targetNickName, line);
+        EncodedLine encodedLine = new EncodedLine(line, false);
+        for (ConnectionHandler user : registeredUsers.values()) {
+            user.send(encodedLine);
+        }
+    }
+
+    /**
+     * sends the message once to every user sharing a channel with this user, and to this user.
+     * The users are found from the channels this user has joined, not from every user of the server, and a bitset
+     * of their ids keeps a user in several of the channels from being collected twice.
+     * @param line the message content
+     */
+    public void sendCommonChannelsMessage(String line) {
+        List<ConnectionHandler> recipients = new ArrayList<ConnectionHandler>();
+        long[] seen = new long[(userTable.getIdBound() + 63) >>> 6];
+        for (Channel channel : joinedChannels) {
+            seen = channel.collectNewMembers(seen, recipients);
+        }
+        if (joinedChannels.isEmpty()) {
+            recipients.add(this);
+        }
+        metrics.recordFanOut(recipients.size());
+        EncodedLine encodedLine = new EncodedLine(line, false);
+        for (ConnectionHandler recipient : recipients) {
+            recipient.send(encodedLine);
         }
     }
 
     /**
      * sends private message to all users in the channel.
+     * The line is encoded once and the same immutable bytes are queued for every user.
      * @param targetChannelName the name of target channel
      * @param message the message content
      * @throws NoChannelExistsException cannot find the existing channel
+     * @throws MessageLogFullException the message log has no room for the message and refuses it
      */
-    public void sendChannelPrivmsgMessage(String targetChannelName, String message) throws NoChannelExistsException {
-        if (channels.containsKey(targetChannelName)) {
-            ArrayList<String> inChannelUsers = channels.get(targetChannelName);
-            Iterator<String> iterator = inChannelUsers.iterator();
-            while (iterator.hasNext()) {
-                String targetNickName = iterator.next();
-                String line = ":" + nickName + " " + Configuration.PRIVMSG_STRING + " " + targetChannelName + " :" + message;
-                sendUserMessage(targetNickName, line);
+    public void sendChannelPrivmsgMessage(String targetChannelName, String message)
+            throws NoChannelExistsException, MessageLogFullException {
+        Channel channel = channels.get(targetChannelName);
+        if (channel != null) {
+            String line = ":" + nickName + " " + Configuration.PRIVMSG_STRING + " " + targetChannelName + " :" + message;
+            EncodedLine encodedLine = new EncodedLine(line, true);
+            if (!messageLog.append(targetChannelName, encodedLine)) {
+                throw new MessageLogFullException("The message log is full, the message was not sent");
+            }
+            ConnectionHandler[] members = channel.record(encodedLine);
+            metrics.recordFanOut(members.length);
+            for (ConnectionHandler member : members) {
+                member.send(encodedLine);
             }
+            historyStore.trim();
         } else {
             throw new NoChannelExistsException("No channel exists with that name");
         }
@@ -174,11 +334,18 @@ public class ConnectionHandler extends Thread {
      * @param targetNickName the nickname of user
      * @param message the message content
      * @throws NoUserExistsException cannot find the existing user
+     * @throws MessageLogFullException the message log has no room for the message and refuses it
      */
-    public void sendUserPrivmsgMessage(String targetNickName, String message) throws NoUserExistsException {
-        if (registeredUsers.containsKey(targetNickName)) {
+    public void sendUserPrivmsgMessage(String targetNickName, String message)
+            throws NoUserExistsException, MessageLogFullException {
+        ConnectionHandler target = registeredUsers.get(targetNickName);
+        if (target != null) {
             String line = ":" + nickName + " " + Configuration.PRIVMSG_STRING + " " + targetNickName + " :" + message;
-            sendUserMessage(targetNickName, line);
+            EncodedLine encodedLine = new EncodedLine(line, true);
+            if (!messageLog.append(targetNickName, encodedLine)) {
+                throw new MessageLogFullException("The message log is full, the message was not sent");
+            }
+            target.send(encodedLine);
         } else {
             throw new NoUserExistsException("No user exists with that name");
         }
@@ -190,11 +357,15 @@ public class ConnectionHandler extends Thread {
      * @param line the message content
      */
     public void sendChannelMessage(String targetChannelName, String line) {
-        ArrayList<String> inChannelUsers = channels.get(targetChannelName);
-        Iterator<String> iterator = inChannelUsers.iterator();
-        while (iterator.hasNext()) {
-            String targetNickName = iterator.next();
-            sendUserMessage(targetNickName, line);
+        Channel channel = channels.get(targetChannelName);
+        if (channel == null) {
+            return;
+        }
+        EncodedLine encodedLine = new EncodedLine(line, false);
+        ConnectionHandler[] members = channel.getMembers();
+        metrics.recordFanOut(members.length);
+        for (ConnectionHandler member : members) {
+            member.send(encodedLine);
         }
     }
 
@@ -204,62 +375,117 @@ public class ConnectionHandler extends Thread {
      * @param line the message content
      */
     public void sendUserMessage(String targetNickName, String line) {
+        sendUserMessage(targetNickName, new EncodedLine(line, false));
+    }
+
+    /**
+     * sends the encoded message to the user, nothing is sent if no user has the nickname any more.
+     * @param targetNickName the nickname of user
+     * @param line the encoded message
+     */
+    public void sendUserMessage(String targetNickName, EncodedLine line) {
         ConnectionHandler target = registeredUsers.get(targetNickName);
-        target.send(line);
+        if (target != null) {
+            target.send(line);
+        }
     }
 
     /**
-     * leave the current channel.
+     * leave the current channel, the channel is removed with its last user.
+     * The part runs inside the map's compute, so it is atomic with joins of the same channel.
+     * The user gives its id back when it leaves its last channel.
      * @param arguments the name of channel
      */
     public void partChannel(String arguments) {
-        ArrayList<String> inChannelUsers = channels.get(arguments);
-        if (inChannelUsers.contains(nickName)) {
-            inChannelUsers.remove(nickName);
-        }
-        if (inChannelUsers.isEmpty()) {
-            channels.remove(arguments);
+        channels.computeIfPresent(arguments, (name, channel) -> {
+            channel.part(this);
+            joinedChannels.remove(channel);
+            if (channel.isEmpty()) {
+                channelIndex.remove(name, channel);
+                historyStore.discard(name);
+                return null;
+            }
+            return channel;
+        });
+        if (joinedChannels.isEmpty() && id >= 0) {
+            userTable.release(id);
+            id = -1;
         }
     }
 
     /**
-     * creates a new channel in the server.
+     * joins a channel, the channel is created if it does not exist. A name longer than the maximum is refused.
+     * The join runs inside the map's compute, which locks only the bin of this channel: two joins of the same
+     * channel are serialized, while joins of unrelated channels run in parallel.
      * @param arguments the channel name
+     * @return the history mark to pass to replayHistory, or -1 if the user is already in the channel
      * @throws InvalidChannelNameException invalid channel name
      */
-    public void createChannel(String arguments) throws InvalidChannelNameException {
-        Pattern channelNamePattern = Pattern.compile("^\\#[\\w]+");
-        Matcher channelNameMatcher = channelNamePattern.matcher(arguments);
-        if (channelNameMatcher.matches()) {
-            ArrayList<String> inChannelUsers = new ArrayList<String>();
-            inChannelUsers.add(nickName);
-            channels.put(arguments, inChannelUsers);
-        } else {
+    public long joinChannel(String arguments) throws InvalidChannelNameException {
+        if (arguments.length() > Configuration.MAX_CHANNEL_NAME_LENGTH || !LineParser.isChannelName(arguments)) {
             throw new InvalidChannelNameException("Invalid channel name");
         }
+        if (id < 0) {
+            id = userTable.acquire(this);
+        }
+        long[] mark = new long[1];
+        channels.compute(arguments, (name, channel) -> {
+            if (channel == null) {
+                channel = new Channel(name, userTable, historyStore.historyFor(name));
+                channelIndex.put(name, channel);
+            }
+            mark[0] = channel.join(this);
+            joinedChannels.add(channel);
+            return channel;
+        });
+        return mark[0];
     }
 
     /**
-     * joins a existing channel.
-     * @param arguments the channel name
+     * queues the history of a channel this user has just joined, the lines recorded before the join.
+     * It is called after the JOIN echo is queued, so the user sees the join before the history of the channel.
+     * @param channelName the channel name
+     * @param mark the history mark joinChannel returned
+     */
+    public void replayHistory(String channelName, long mark) {
+        Channel channel = channels.get(channelName);
+        if (channel != null && mark >= 0) {
+            channel.replayHistory(this, mark);
+        }
+    }
+
+    /**
+     * leaves every channel this user has joined.
      */
-    public void joinChannel(String arguments) {
-        channels.get(arguments).add(nickName);
+    public void partAllChannels() {
+        for (Channel channel : joinedChannels) {
+            partChannel(channel.getName());
+        }
     }
 
     /**
-     * sets the nickname of this user.
+     * sets the nickname of this user, and claims it in the registered users.
+     * The claim is one putIfAbsent, so two users can never take the same nickname.
      * @param nickName the nickname user wants to set
      * @throws InvalidNickNameException invalid nickname
+     * @throws NickNameInUseException another user has the nickname
      */
-    public void setNickName(String nickName) throws InvalidNickNameException {
-        Pattern nickNamePattern = Pattern.compile("^[A-Za-z_][\\w]{0,8}");
-        Matcher nickNameMatcher = nickNamePattern.matcher(nickName);
-        if (nickNameMatcher.matches()) {
-            this.nickName = nickName;
-        } else {
+    public void setNickName(String nickName) throws InvalidNickNameException, NickNameInUseException {
+        if (!LineParser.isNickName(nickName)) {
             throw new InvalidNickNameException("Invalid nickname");
         }
+        ConnectionHandler owner = registeredUsers.putIfAbsent(nickName, this);
+        if (owner != null && owner != this) {
+            throw new NickNameInUseException("Nickname is already in use");
+        }
+        String oldNickName = this.nickName;
+        this.nickName = nickName;
+        if (!oldNickName.equals(nickName)) {
+            registeredUsers.remove(oldNickName, this);
+            for (Channel channel : joinedChannels) {
+                channel.renamed();
+            }
+        }
     }
 
     /**
@@ -274,13 +500,12 @@ public class ConnectionHandler extends Thread {
         if (userName != null) {
             throw new RepeatedRegisterException("You are already registered");
         }
-        Pattern userPattern = Pattern.compile("^([\\S]+)\\s0\\s\\*\\s:(.*)");
-        Matcher userMatcher = userPattern.matcher(arguments);
+        int userNameEnd = LineParser.userNameEnd(arguments);
         String userName, realName;
 
-        if (userMatcher.matches()) {
-            userName = userMatcher.group(1);
-            realName = userMatcher.group(2);
+        if (userNameEnd >= 0) {
+            userName = arguments.substring(0, userNameEnd);
+            realName = arguments.substring(userNameEnd + 6);
         } else {
             throw new NotEnoughUserArgumentsException("Not enough arguments");
         }
@@ -289,9 +514,7 @@ public class ConnectionHandler extends Thread {
     }
 
     private void setUserName(String userName) throws InvalidUserNameException {
-        Pattern userNamePattern = Pattern.compile("\\s");
-        Matcher userNameMatcher = userNamePattern.matcher(userName);
-        if (userNameMatcher.matches()) {
+        if (userName.length() == 1 && LineParser.isWhitespace(userName.charAt(0))) {
             throw new InvalidUserNameException("Invalid arguments to USER command");
         } else {
             this.userName = userName;
@@ -319,6 +542,9 @@ public class ConnectionHandler extends Thread {
      * @param message the error line content
      */
     public void sendError(String message) {
+        if (currentStats != null) {
+            currentStats.recordError();
+        }
         String errorLine = ":" + serverName + " " + Configuration.ERROR_CODE + " " + nickName + " :" + message;
         send(errorLine);
     }
@@ -328,8 +554,223 @@ public class ConnectionHandler extends Thread {
      * @param line the message content
      */
     public void send(String line) {
-        pw.println(line);
-        pw.flush();
+        send(new EncodedLine(line, false));
+    }
+
+    /**
+     * queues the encoded message for this user, the user is disconnected if it reads too slowly.
+     * @param line the encoded message
+     */
+    public void send(EncodedLine line) {
+        ParkedSession session = parkedSession;
+        if (session != null) {
+            session.add(line);
+            return;
+        }
+        if (outboundQueue.offer(line)) {
+            transport.requestWrite();
+        } else {
+            ServerLog.warn("ConnectionHandler", "reads too slowly, disconnecting", nickName);
+            String errorLine = Configuration.ERROR_STRING + " :Closing link: " + nickName + " (SendQ exceeded)";
+            outboundQueue.closeWith(new EncodedLine(errorLine, false));
+            transport.abort();
+        }
+    }
+
+    /**
+     * starts sending a LIST reply, one chunk now and the next chunks as the user reads them.
+     * A listing still in progress is replaced.
+     * @param listing the listing to send
+     */
+    public void startListing(ChannelListing listing) {
+        pendingListing.set(listing);
+        outboundDrained();
+    }
+
+    /**
+     * sends the next chunk of the pending listing, the transport calls it when every queued line has been written.
+     * The listing is taken out while a chunk is sent, so the reader and the writer never send the same chunk.
+     * A chunk which left nothing to write, because its channels were filtered out or already written, gets no call
+     * from the transport, so the next chunk is sent from the timer thread at the next tick. The listing of a closed
+     * connection is dropped.
+     */
+    public void outboundDrained() {
+        ChannelListing listing = pendingListing.getAndSet(null);
+        if (listing == null || !open.get()
+                || !listing.sendChunk(this, Configuration.LIST_CHUNK_LINES, Configuration.LIST_CHUNK_SCAN)) {
+            return;
+        }
+        pendingListing.compareAndSet(null, listing);
+        if (outboundQueue.getQueuedLines() == 0) {
+            timerWheel.schedule(this::outboundDrained, 0);
+        }
+    }
+
+    /**
+     * gets all channels sorted by name.
+     * @return all channels sorted by name
+     */
+    public ConcurrentSkipListMap<String, Channel> getChannelIndex() {
+        return channelIndex;
+    }
+
+    /**
+     * records that the transport has closed the connection, only the first call counts.
+     * A user who holds a nickname and has not quit is parked for resuming, or else quits now. The QUIT runs on the
+     * timer wheel, never on the thread which closed the connection, which may be sending inside a channel update.
+     */
+    public void connectionClosed() {
+        if (open.compareAndSet(true, false)) {
+            metrics.connectionClosed();
+            floodControl.detach(remoteAddress);
+            if (remoteAddress != null) {
+                admissionControl.release(remoteAddress);
+            }
+            TimerWheel.Timeout timeout = idleTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            if (registeredUsers.get(nickName) == this) {
+                if (resumeToken != null) {
+                    sessionStore.park(this, resumeToken);
+                } else {
+                    timerWheel.schedule(this::quit, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * makes the lines sent to this user wait in the parked session, the connection of the user has dropped.
+     * @param session the parked session
+     */
+    public void setParkedSession(ParkedSession session) {
+        this.parkedSession = session;
+    }
+
+    /**
+     * sends the user a new token to resume its session with after the connection dropped, if resuming is on.
+     */
+    public void sendResumeToken() {
+        if (!sessionStore.isEnabled()) {
+            return;
+        }
+        resumeToken = sessionStore.newToken();
+        send(":" + serverName + " " + Configuration.RESUME_TOKEN_CODE + " " + nickName + " " + resumeToken
+                + " :is your resume token");
+    }
+
+    /**
+     * takes over the parked session of a token: the nickname, the registration and the channels.
+     * The channels keep the id of the user, only the connection behind the id changes, so the other members see
+     * no QUIT or JOIN. The user gets a welcome, a new token and then the lines it missed.
+     * @param token the resume token
+     * @throws InvalidResumeTokenException no session is parked with the token
+     * @throws RepeatedRegisterException this connection has registered already
+     */
+    public void resume(String token) throws InvalidResumeTokenException, RepeatedRegisterException {
+        if (userName != null) {
+            throw new RepeatedRegisterException("You are already registered");
+        }
+        ParkedSession session = sessionStore.resume(token);
+        if (session == null) {
+            throw new InvalidResumeTokenException("Invalid resume token");
+        }
+        ConnectionHandler parked = session.getHandler();
+        registeredUsers.remove(nickName, this);
+        nickName = parked.nickName;
+        userName = parked.userName;
+        realName = parked.realName;
+        operator = parked.operator;
+        id = parked.id;
+        joinedChannels.addAll(parked.joinedChannels);
+        String text = "Welcome back to the IRC network, " + nickName;
+        send(":" + serverName + " " + Configuration.NICK_CODE + " " + nickName + " :" + text);
+        sendResumeToken();
+        long dropped = session.resumeTo(this, () -> {
+            if (id >= 0) {
+                userTable.replace(id, this);
+            }
+            registeredUsers.put(nickName, this);
+        });
+        for (Channel channel : joinedChannels) {
+            channel.renamed();
+        }
+        ServerLog.info("ConnectionHandler", "session resumed, missed lines dropped " + dropped, nickName);
+    }
+
+    /**
+     * leaves the server: the users sharing a channel get the QUIT, then the user leaves every channel and gives up
+     * the nickname.
+     */
+    public void quit() {
+        String line = ":" + nickName + " " + Configuration.QUIT_STRING;
+        sendCommonChannelsMessage(line);
+        partAllChannels();
+        registeredUsers.remove(nickName, this);
+    }
+
+    /**
+     * checks whether the user has identified as the operator.
+     * @return the result of check
+     */
+    public boolean isOperator() {
+        return operator;
+    }
+
+    /**
+     * marks the user as the operator.
+     */
+    public void setOperator() {
+        this.operator = true;
+    }
+
+    /**
+     * gets the recent lines of the channels.
+     * @return the history store
+     */
+    public HistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    /**
+     * gets the durable log of the delivered messages.
+     * @return the message log
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /**
+     * gets the parked sessions of the server.
+     * @return the session store
+     */
+    public SessionStore getSessionStore() {
+        return sessionStore;
+    }
+
+    /**
+     * gets the metrics of the server.
+     * @return the metrics
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * gets the id of this user in the user table.
+     * @return the id, or -1 if the user is in no channel
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * gets the lines waiting to be written to this user.
+     * @return the outbound queue
+     */
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
     }
 
     public String getNickName() {
@@ -348,7 +789,7 @@ public class ConnectionHandler extends Thread {
      * gets all channels in the server.
      * @return all channels in the server
      */
-    public ConcurrentHashMap<String, ArrayList<String>> getChannels() {
+    public ConcurrentHashMap<String, Channel> getChannels() {
         return channels;
     }
 
@@ -359,15 +800,4 @@ public class ConnectionHandler extends Thread {
     public ConcurrentHashMap<String, ConnectionHandler> getRegisteredUsers() {
         return registeredUsers;
     }
-
-    private void cleanup() {
-        System.out.println("ConnectionHandler: ... cleaning up and exiting ... ");
-        try {
-            br.close();
-            is.close();
-            conn.close();
-        } catch (IOException ioe) {
-            System.out.println("ConnectionHandler:cleanup " + ioe.getMessage());
-        }
-    }
 }
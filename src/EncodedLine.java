@@ -0,0 +1,67 @@
+import java.nio.charset.Charset;
+
+/**
+ * The line encoded to the bytes written on the socket, it is immutable once constructed.
+ * One instance can be queued for many users: the queues only copy from it and keep their own write offset, so it
+ * needs no reference count and is collected once the last queue has written it.
+ */
+public class EncodedLine {
+
+    private final byte[] bytes;
+    private final boolean droppable;
+
+    /**
+     * constructs an encoded line.
+     * @param line the message content
+     * @param droppable whether the line can be dropped when the user reads too slowly
+     */
+    public EncodedLine(String line, boolean droppable) {
+        this.bytes = (line + System.lineSeparator()).getBytes(Charset.defaultCharset());
+        this.droppable = droppable;
+    }
+
+    /**
+     * constructs a line from bytes already encoded.
+     * @param bytes the encoded bytes including the line separator, which must not be modified afterwards
+     * @param droppable whether the line can be dropped when the user reads too slowly
+     */
+    public EncodedLine(byte[] bytes, boolean droppable) {
+        this.bytes = bytes;
+        this.droppable = droppable;
+    }
+
+    /**
+     * constructs an encoded line from parts already encoded around a string, so the parts shared by several lines
+     * are only encoded once.
+     * @param head the encoded start of the line
+     * @param middle the string between the parts, only ASCII
+     * @param tail the encoded end of the line including the line separator
+     * @param droppable whether the line can be dropped when the user reads too slowly
+     */
+    public EncodedLine(byte[] head, String middle, byte[] tail, boolean droppable) {
+        int length = middle.length();
+        this.bytes = new byte[head.length + length + tail.length];
+        System.arraycopy(head, 0, bytes, 0, head.length);
+        for (int i = 0; i < length; i++) {
+            bytes[head.length + i] = (byte) middle.charAt(i);
+        }
+        System.arraycopy(tail, 0, bytes, head.length + length, tail.length);
+        this.droppable = droppable;
+    }
+
+    /**
+     * gets the encoded bytes including the line separator.
+     * @return the bytes, which must not be modified
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * checks whether the line can be dropped, like PRIVMSG, while JOIN, PART and QUIT cannot.
+     * @return the result of check
+     */
+    public boolean isDroppable() {
+        return droppable;
+    }
+}
@@ -0,0 +1,149 @@
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The flood control of the server: the rates of the token buckets every connection and every address get, and the
+ * buckets of the addresses, shared by all connections from one address.
+ * The bucket of an address is dropped with the last connection from it, but not before it has filled up again,
+ * so reconnecting does not give an address a full bucket.
+ */
+public class FloodControl {
+
+    /**
+     * The flood policy which handles every line and stops reading until the owed tokens are paid back.
+     */
+    public static final String DELAY_POLICY = "delay";
+    /**
+     * The flood policy which closes the connection on the first line the buckets hold too few tokens for.
+     */
+    public static final String DISCONNECT_POLICY = "disconnect";
+
+    private final long rate;
+    private final int burst;
+    private final long addressRate;
+    private final int addressBurst;
+    private final int maxCost;
+    private final boolean delaying;
+    private final TimerWheel timerWheel;
+    private final ConcurrentHashMap<InetAddress, Source> sources = new ConcurrentHashMap<InetAddress, Source>();
+
+    /**
+     * constructs the flood control, a rate of 0 turns its buckets off.
+     * @param rate the tokens per second of a connection
+     * @param burst the tokens a connection can spend at once
+     * @param addressRate the tokens per second of an address
+     * @param addressBurst the tokens an address can spend at once
+     * @param policy the flood policy, delay or disconnect
+     * @param timerWheel the timer wheel which drops the buckets of the addresses
+     */
+    public FloodControl(long rate, int burst, long addressRate, int addressBurst, String policy,
+                        TimerWheel timerWheel) {
+        this.rate = rate;
+        this.burst = burst;
+        this.addressRate = addressRate;
+        this.addressBurst = addressBurst;
+        int maxCost = Integer.MAX_VALUE;
+        if (rate > 0) {
+            maxCost = Math.min(maxCost, burst);
+        }
+        if (addressRate > 0) {
+            maxCost = Math.min(maxCost, addressBurst);
+        }
+        this.maxCost = maxCost;
+        this.delaying = !DISCONNECT_POLICY.equalsIgnoreCase(policy);
+        this.timerWheel = timerWheel;
+    }
+
+    /**
+     * checks whether the lines over the limit are delayed rather than disconnected.
+     * @return the result of check
+     */
+    public boolean isDelaying() {
+        return delaying;
+    }
+
+    /**
+     * gets the cost of a line, which is no more than a full bucket, so every line can pass eventually.
+     * @param cost the cost of the command
+     * @return the number of tokens the line takes
+     */
+    public int limitCost(int cost) {
+        return Math.min(cost, maxCost);
+    }
+
+    /**
+     * creates the bucket of a new connection.
+     * @return the bucket, or null if connections are not limited
+     */
+    public TokenBucket newConnectionBucket() {
+        return rate > 0 ? new TokenBucket(rate, burst) : null;
+    }
+
+    /**
+     * counts a new connection from an address and gets the bucket of the address.
+     * @param address the address of the user, or null if it is unknown
+     * @return the bucket, or null if addresses are not limited
+     */
+    public TokenBucket attach(InetAddress address) {
+        if (addressRate <= 0 || address == null) {
+            return null;
+        }
+        Source source = sources.compute(address, (key, current) -> {
+            Source next = current == null ? new Source(new TokenBucket(addressRate, addressBurst)) : current;
+            next.connections++;
+            return next;
+        });
+        return source.bucket;
+    }
+
+    /**
+     * counts a closed connection from an address. The bucket of the address is dropped with its last connection
+     * once it is full again.
+     * @param address the address of the user, or null if it is unknown
+     */
+    public void detach(InetAddress address) {
+        if (addressRate <= 0 || address == null) {
+            return;
+        }
+        sources.computeIfPresent(address, (key, source) -> {
+            source.connections--;
+            return source;
+        });
+        dropIfIdle(address);
+    }
+
+    /**
+     * gets the number of addresses with a bucket.
+     * @return the number of addresses
+     */
+    public int getAddressCount() {
+        return sources.size();
+    }
+
+    private void dropIfIdle(InetAddress address) {
+        sources.computeIfPresent(address, (key, source) -> {
+            if (source.connections > 0) {
+                return source;
+            }
+            long refill = source.bucket.getRefillNanos(System.nanoTime());
+            if (refill > 0) {
+                timerWheel.schedule(() -> dropIfIdle(address), refill / 1000000 + 1);
+                return source;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The bucket of one address with the number of its open connections.
+     */
+    private static final class Source {
+
+        private final TokenBucket bucket;
+        private int connections;
+
+        private Source(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The histories of all channels, kept by channel name while the channel exists. The history is discarded with its
+ * channel, so whoever creates a channel again does not get the lines of its previous members. The memory of all
+ * histories together is capped: above the cap the histories used longest ago are emptied, until the total is an
+ * eighth below the cap, so the scan for them is rarely needed.
+ */
+public class HistoryStore {
+
+    private final ConcurrentHashMap<String, ChannelHistory> histories = new ConcurrentHashMap<String, ChannelHistory>();
+    private final int defaultLines;
+    private final Map<String, Integer> channelLines;
+    private final long maxBytes;
+    private final boolean offHeap;
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    /**
+     * constructs an empty store.
+     * @param defaultLines the number of lines kept for a channel
+     * @param channelLines the number of lines of single channels, as a comma separated list of name:lines
+     * @param maxBytes the memory all histories may take together
+     * @param offHeap whether the histories are kept in direct buffers
+     */
+    public HistoryStore(int defaultLines, String channelLines, long maxBytes, boolean offHeap) {
+        this.defaultLines = defaultLines;
+        this.channelLines = parseChannelLines(channelLines);
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * gets the history of a channel, it is created if the channel has none. It is called while the channel is created.
+     * @param channelName the channel name
+     * @return the history
+     */
+    public ChannelHistory historyFor(String channelName) {
+        return histories.computeIfAbsent(channelName,
+                name -> new ChannelHistory(name, Math.max(0, channelLines.getOrDefault(name, defaultLines)), this));
+    }
+
+    /**
+     * allocates the buffer of a history and accounts for it.
+     * @param capacity the size of the buffer
+     * @return the buffer
+     */
+    public ByteBuffer allocate(int capacity) {
+        allocatedBytes.addAndGet(capacity);
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * accounts for a buffer a history no longer uses.
+     * @param capacity the size of the buffer
+     */
+    public void released(long capacity) {
+        allocatedBytes.addAndGet(-capacity);
+    }
+
+    /**
+     * gets the memory all histories take.
+     * @return the number of bytes
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * empties the histories used longest ago while the memory is over the cap, their channels keep recording.
+     * It must not be called while holding the lock of a history.
+     */
+    public void trim() {
+        if (allocatedBytes.get() <= maxBytes) {
+            return;
+        }
+        synchronized (evictionLock) {
+            long target = maxBytes - maxBytes / 8;
+            while (allocatedBytes.get() > target) {
+                ChannelHistory coldest = null;
+                for (ChannelHistory history : histories.values()) {
+                    if (!history.isEmpty() && (coldest == null || history.getLastUsed() < coldest.getLastUsed())) {
+                        coldest = history;
+                    }
+                }
+                if (coldest == null) {
+                    return;
+                }
+                released(coldest.clear());
+            }
+        }
+    }
+
+    /**
+     * discards the history of a channel with its lines, it is called while the empty channel is removed.
+     * @param channelName the channel name
+     */
+    public void discard(String channelName) {
+        ChannelHistory history = histories.remove(channelName);
+        if (history != null) {
+            released(history.discard());
+        }
+    }
+
+    private static Map<String, Integer> parseChannelLines(String channelLines) {
+        Map<String, Integer> lines = new HashMap<String, Integer>();
+        for (String entry : channelLines.split(",")) {
+            int colon = entry.lastIndexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            try {
+                lines.put(entry.substring(0, colon).trim(), Integer.parseInt(entry.substring(colon + 1).trim()));
+            } catch (NumberFormatException numberFormatException) {
+                ServerLog.warn("HistoryStore", "ignoring history size of " + entry, numberFormatException.getMessage());
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * The set of user ids of one channel. A small channel keeps its ids in a sorted int array, four bytes per member,
+ * and a channel which holds a good share of all ids switches to a bitset, one bit per possible id.
+ * It switches to the bitset once the array would take twice its size, and back once it would take half, so a
+ * channel on the edge does not switch on every join. The set is not thread safe, the channel guards it.
+ */
+public class IdSet {
+
+    private int[] ids = new int[4];
+    private long[] bits;
+    private int size;
+
+    /**
+     * adds an id.
+     * @param id the id
+     * @return false if the id is already in the set
+     */
+    public boolean add(int id) {
+        if (bits != null) {
+            int word = id >>> 6;
+            if (word >= bits.length) {
+                long[] grown = new long[Math.max(word + 1, bits.length * 2)];
+                System.arraycopy(bits, 0, grown, 0, bits.length);
+                bits = grown;
+            }
+            long mask = 1L << id;
+            if ((bits[word] & mask) != 0) {
+                return false;
+            }
+            bits[word] |= mask;
+            size++;
+            return true;
+        }
+        int index = binarySearch(id);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+        if (size == ids.length) {
+            int[] grown = new int[size * 2];
+            System.arraycopy(ids, 0, grown, 0, size);
+            ids = grown;
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+        if (size * 32 > ids[size - 1] + 64) {
+            toBits();
+        }
+        return true;
+    }
+
+    /**
+     * removes an id.
+     * @param id the id
+     * @return false if the id is not in the set
+     */
+    public boolean remove(int id) {
+        if (bits != null) {
+            int word = id >>> 6;
+            long mask = 1L << id;
+            if (word >= bits.length || (bits[word] & mask) == 0) {
+                return false;
+            }
+            bits[word] &= ~mask;
+            size--;
+            if (size < bits.length / 2) {
+                toIds();
+            }
+            return true;
+        }
+        int index = binarySearch(id);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * checks whether the id is in the set.
+     * @param id the id
+     * @return the result of check
+     */
+    public boolean contains(int id) {
+        if (bits != null) {
+            int word = id >>> 6;
+            return word < bits.length && (bits[word] & (1L << id)) != 0;
+        }
+        return binarySearch(id) >= 0;
+    }
+
+    /**
+     * gets the number of ids.
+     * @return the number of ids
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * copies the ids in ascending order.
+     * @return the ids
+     */
+    public int[] toArray() {
+        if (bits == null) {
+            int[] array = new int[size];
+            System.arraycopy(ids, 0, array, 0, size);
+            return array;
+        }
+        int[] array = new int[size];
+        int count = 0;
+        for (int word = 0; word < bits.length; word++) {
+            long w = bits[word];
+            while (w != 0) {
+                array[count++] = (word << 6) + Long.numberOfTrailingZeros(w);
+                w &= w - 1;
+            }
+        }
+        return array;
+    }
+
+    private void toBits() {
+        long[] set = new long[(ids[size - 1] >>> 6) + 1];
+        for (int i = 0; i < size; i++) {
+            set[ids[i] >>> 6] |= 1L << ids[i];
+        }
+        bits = set;
+        ids = null;
+    }
+
+    private void toIds() {
+        int[] array = toArray();
+        ids = new int[Math.max(4, array.length * 2)];
+        System.arraycopy(array, 0, ids, 0, array.length);
+        bits = null;
+    }
+
+    private int binarySearch(int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = ids[mid];
+            if (value < id) {
+                low = mid + 1;
+            } else if (value > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
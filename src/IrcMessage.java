@@ -0,0 +1,175 @@
+/**
+ * The parsed form of one line from the user.
+ * A connection keeps one instance and the parser fills it again for every line, the parts are only kept as offsets
+ * into the line until they are asked for. The commands get their arguments as one string, so the middle and trailing
+ * parameters are only split out of the arguments the first time they are asked for.
+ */
+public class IrcMessage {
+
+    /**
+     * The maximum number of middle parameters kept for one line.
+     */
+    public static final int MAX_PARAMS = 15;
+
+    private String line;
+    private int prefixEnd;
+    private int commandStart;
+    private int commandEnd;
+    private int argumentsStart;
+    private int paramCount;
+    private int[] paramStarts = new int[MAX_PARAMS];
+    private int[] paramEnds = new int[MAX_PARAMS];
+    private int trailingStart;
+    private boolean split;
+
+    /**
+     * clears the message and sets the line it is parsed from.
+     * @param line the line from the user
+     */
+    void reset(String line) {
+        this.line = line;
+        prefixEnd = -1;
+        commandStart = 0;
+        commandEnd = 0;
+        argumentsStart = line.length();
+        paramCount = 0;
+        trailingStart = -1;
+        split = false;
+    }
+
+    void setPrefixEnd(int prefixEnd) {
+        this.prefixEnd = prefixEnd;
+    }
+
+    void setCommand(int commandStart, int commandEnd) {
+        this.commandStart = commandStart;
+        this.commandEnd = commandEnd;
+    }
+
+    void setArgumentsStart(int argumentsStart) {
+        this.argumentsStart = argumentsStart;
+    }
+
+    /**
+     * splits the arguments into the middle parameters, separated by spaces, and the trailing parameter after the
+     * first parameter starting with a colon.
+     */
+    private void split() {
+        if (split) {
+            return;
+        }
+        split = true;
+        int length = line.length();
+        int pos = argumentsStart;
+        while (pos < length) {
+            if (line.charAt(pos) == ' ') {
+                pos++;
+            } else if (line.charAt(pos) == ':') {
+                trailingStart = pos + 1;
+                return;
+            } else {
+                int paramStart = pos;
+                while (pos < length && line.charAt(pos) != ' ') {
+                    pos++;
+                }
+                if (paramCount < MAX_PARAMS) {
+                    paramStarts[paramCount] = paramStart;
+                    paramEnds[paramCount] = pos;
+                    paramCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * checks whether the line starts with a prefix.
+     * @return the result of check
+     */
+    public boolean hasPrefix() {
+        return prefixEnd >= 0;
+    }
+
+    /**
+     * gets the prefix without the leading colon.
+     * @return the prefix, or null if there is none
+     */
+    public String getPrefix() {
+        return hasPrefix() ? line.substring(1, prefixEnd) : null;
+    }
+
+    /**
+     * gets the line the message is parsed from.
+     * @return the line
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * gets the command.
+     * @return the command
+     */
+    public String getCommand() {
+        return line.substring(commandStart, commandEnd);
+    }
+
+    /**
+     * gets the index of the first character of the command in the line.
+     * @return the start of the command
+     */
+    public int getCommandStart() {
+        return commandStart;
+    }
+
+    /**
+     * gets the index after the last character of the command in the line.
+     * @return the end of the command
+     */
+    public int getCommandEnd() {
+        return commandEnd;
+    }
+
+    /**
+     * gets everything after the command and its separating space.
+     * @return the arguments of the command
+     */
+    public String getArguments() {
+        return line.substring(argumentsStart);
+    }
+
+    /**
+     * gets the number of middle parameters.
+     * @return the number of parameters
+     */
+    public int getParamCount() {
+        split();
+        return paramCount;
+    }
+
+    /**
+     * gets a middle parameter.
+     * @param index the index of parameter
+     * @return the parameter
+     */
+    public String getParam(int index) {
+        split();
+        return line.substring(paramStarts[index], paramEnds[index]);
+    }
+
+    /**
+     * checks whether the line has a trailing parameter, the one after " :".
+     * @return the result of check
+     */
+    public boolean hasTrailing() {
+        split();
+        return trailingStart >= 0;
+    }
+
+    /**
+     * gets the trailing parameter without its leading colon.
+     * @return the trailing parameter, or null if there is none
+     */
+    public String getTrailing() {
+        return hasTrailing() ? line.substring(trailingStart) : null;
+    }
+}
@@ -1,40 +1,234 @@
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.concurrent.ConcurrentHashMap;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.management.JMException;
 
 /**
  * The IrcServer which allow users to chat.
+ * Connections are accepted by one or more acceptor threads, each of which refuses connections above the caps of the
+ * admission control with an ERROR line before handing the admitted ones to their transport.
  */
 public class IrcServer {
 
-    private String serverName;
-    private ConcurrentHashMap<String, ArrayList<String>> channels;
-    private ConcurrentHashMap<String, ConnectionHandler> registeredUsers;
-    private ServerSocket serversocket;
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private ServerContext context;
+    private AdmissionControl admissionControl;
 
     /**
-     * constructs a Server with server name and port.
+     * constructs a Server with server name and port in the blocking mode.
      * @param serverName the name of server
      * @param port the number of port
      */
     public IrcServer(String serverName, int port) {
+        this(new ServerContext(serverName), port, Configuration.BLOCKING_MODE_STRING);
+    }
+
+    /**
+     * constructs a Server with its shared state, port and transport mode.
+     * @param context the state shared by every connection, with the commands of the server
+     * @param port the number of port
+     * @param mode the transport mode, blocking, virtual or nio
+     */
+    public IrcServer(ServerContext context, int port, String mode) {
         try {
-            this.serverName = serverName;
-            serversocket = new ServerSocket(port);
-            channels = new ConcurrentHashMap<String, ArrayList<String>>();
-            registeredUsers = new ConcurrentHashMap<String, ConnectionHandler>();
-            System.out.println("Server started ... listening on port " + port + " ...");
-            while (true) {
-                Socket conn = serversocket.accept();
-                System.out.println("Server got new connection request from " + conn.getInetAddress());
-
-                ConnectionHandler ch = new ConnectionHandler(serverName, channels, registeredUsers, conn);
-                ch.start();
+            this.context = context;
+            this.admissionControl = context.getAdmissionControl();
+            context.getMetrics().registerMBean();
+            if (mode.equals(Configuration.NIO_MODE_STRING)) {
+                serveNio(port);
+            } else if (mode.equals(Configuration.VIRTUAL_MODE_STRING)) {
+                serveBlocking(port, virtualThreadFactory());
+            } else {
+                serveBlocking(port, Executors.defaultThreadFactory());
             }
         } catch (IOException ioe) {
-            System.out.println("Ooops " + ioe.getMessage());
+            ServerLog.error("IrcServer", "Ooops", ioe.getMessage());
+        } catch (ReflectiveOperationException reflectiveOperationException) {
+            ServerLog.error("IrcServer", "Ooops virtual threads need Java 21 or later", null);
+        } catch (JMException jmException) {
+            ServerLog.error("IrcServer", "Ooops cannot register the metrics", jmException.getMessage());
+        }
+    }
+
+    /**
+     * gets the factory of virtual threads, it is looked up reflectively so the server still runs on older Java.
+     * @return the virtual thread factory
+     * @throws ReflectiveOperationException virtual threads are not supported by this Java
+     */
+    private static ThreadFactory virtualThreadFactory() throws ReflectiveOperationException {
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+        return (ThreadFactory) factory.invoke(builder);
+    }
+
+    private void serveBlocking(int port, ThreadFactory threadFactory) throws IOException {
+        ServerSocket[] listeners = new ServerSocket[listenerCount()];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = new ServerSocket();
+            if (listeners.length > 1) {
+                listeners[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            listeners[i].bind(new InetSocketAddress(port), Configuration.ACCEPT_BACKLOG);
+        }
+        ServerLog.info("IrcServer", "Server started ... listening on port " + port + " with acceptors",
+                Configuration.ACCEPT_THREADS);
+        Runnable[] acceptors = new Runnable[Configuration.ACCEPT_THREADS];
+        for (int i = 0; i < acceptors.length; i++) {
+            ServerSocket listener = listeners[i % listeners.length];
+            acceptors[i] = () -> acceptBlocking(listener, threadFactory);
+        }
+        runAcceptors(acceptors);
+    }
+
+    private void acceptBlocking(ServerSocket listener, ThreadFactory threadFactory) {
+        int failures = 0;
+        while (!listener.isClosed()) {
+            Socket conn;
+            try {
+                conn = listener.accept();
+                failures = 0;
+            } catch (IOException ioe) {
+                if (listener.isClosed() || !backOff(++failures, ioe)) {
+                    break;
+                }
+                continue;
+            }
+            InetAddress address = conn.getInetAddress();
+            ServerLog.debug("IrcServer", "Server got new connection request from", address);
+            String refusal = admissionControl.admit(address);
+            if (refusal != null) {
+                try (Socket refused = conn) {
+                    refused.getOutputStream().write(refusalLine(address, refusal));
+                } catch (IOException ioe) {
+                    ServerLog.debug("IrcServer", "cannot send the refusal", ioe.getMessage());
+                }
+                continue;
+            }
+            SocketTransport transport = new SocketTransport(context, conn, threadFactory);
+            transport.start();
+        }
+    }
+
+    private void serveNio(int port) throws IOException {
+        NioEventLoop[] eventLoops = new NioEventLoop[Configuration.EVENT_LOOP_THREADS];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new NioEventLoop(context, i);
+            eventLoops[i].start();
+        }
+
+        ServerSocketChannel[] listeners = new ServerSocketChannel[listenerCount()];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = ServerSocketChannel.open();
+            if (listeners.length > 1) {
+                listeners[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            listeners[i].bind(new InetSocketAddress(port), Configuration.ACCEPT_BACKLOG);
         }
+        ServerLog.info("IrcServer", "Server started ... listening on port " + port + " with event loops "
+                + eventLoops.length + " and acceptors", Configuration.ACCEPT_THREADS);
+        Runnable[] acceptors = new Runnable[Configuration.ACCEPT_THREADS];
+        for (int i = 0; i < acceptors.length; i++) {
+            ServerSocketChannel listener = listeners[i % listeners.length];
+            int first = i % eventLoops.length;
+            acceptors[i] = () -> acceptNio(listener, eventLoops, first);
+        }
+        runAcceptors(acceptors);
+    }
+
+    private void acceptNio(ServerSocketChannel listener, NioEventLoop[] eventLoops, int first) {
+        int next = first;
+        int failures = 0;
+        while (listener.isOpen()) {
+            SocketChannel conn;
+            try {
+                conn = listener.accept();
+                failures = 0;
+            } catch (IOException ioe) {
+                if (!listener.isOpen() || !backOff(++failures, ioe)) {
+                    break;
+                }
+                continue;
+            }
+            InetAddress address = conn.socket().getInetAddress();
+            ServerLog.debug("IrcServer", "Server got new connection request from", address);
+            String refusal = admissionControl.admit(address);
+            if (refusal != null) {
+                try (SocketChannel refused = conn) {
+                    refused.write(ByteBuffer.wrap(refusalLine(address, refusal)));
+                } catch (IOException ioe) {
+                    ServerLog.debug("IrcServer", "cannot send the refusal", ioe.getMessage());
+                }
+                continue;
+            }
+            eventLoops[next].register(conn);
+            next = (next + 1) % eventLoops.length;
+        }
+    }
+
+    /**
+     * waits after a failed accept on an open socket, twice as long after every failure in a row up to a second, so
+     * a lasting error like running out of file descriptors does not spin the acceptor.
+     * @param failures the number of failed accepts in a row
+     * @param ioe the error of the last accept
+     * @return false if the acceptor was interrupted and stops
+     */
+    private static boolean backOff(int failures, IOException ioe) {
+        long millis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, MIN_ACCEPT_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+        ServerLog.warn("IrcServer", "accept failed, retrying in " + millis + " ms", ioe.getMessage());
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * gets the number of listening sockets: one per acceptor if they share the port with SO_REUSEPORT, so the
+     * kernel spreads the connections over their queues, or else one socket all acceptors take turns on.
+     * @return the number of sockets
+     * @throws IOException cannot open a socket to check the option
+     */
+    private static int listenerCount() throws IOException {
+        if (!Configuration.ACCEPT_REUSE_PORT || Configuration.ACCEPT_THREADS == 1) {
+            return 1;
+        }
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            if (probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                return Configuration.ACCEPT_THREADS;
+            }
+        }
+        ServerLog.warn("IrcServer", "SO_REUSEPORT is not supported, the acceptors share one socket", null);
+        return 1;
+    }
+
+    /**
+     * runs the acceptors, the first on the calling thread, which keeps serving like the single accept loop did.
+     * @param acceptors the accept loops
+     */
+    private static void runAcceptors(Runnable[] acceptors) {
+        for (int i = 1; i < acceptors.length; i++) {
+            new Thread(acceptors[i], "irc-acceptor-" + i).start();
+        }
+        acceptors[0].run();
+    }
+
+    private byte[] refusalLine(InetAddress address, String reason) {
+        context.getMetrics().recordRefusedConnection();
+        ServerLog.info("IrcServer", "refused a connection, " + reason, address);
+        String line = Configuration.ERROR_STRING + " :Closing link: " + address.getHostAddress() + " (" + reason + ")";
+        return new EncodedLine(line, false).getBytes();
     }
 }
@@ -4,21 +4,32 @@ import exception.InvalidIrcServerMainArgumentsException;
  * The entry of the IrcServer, which open a server.
  */
 public class IrcServerMain {
+
+    private static final String USAGE = "Usage: java IrcServerMain <server_name> <port> [blocking|virtual|nio]";
+
     /**
-     * open a server with server name and port from command line.
-     * @param args server name and port number
+     * open a server with server name, port and optional transport mode from command line.
+     * @param args server name, port number and transport mode
      */
     public static void main(String[] args) {
         try {
-            if (args.length != 2) {
-                throw new InvalidIrcServerMainArgumentsException("Usage: java IrcServerMain <server_name> <port>");
+            if (args.length != 2 && args.length != 3) {
+                throw new InvalidIrcServerMainArgumentsException(USAGE);
             } else {
                 if (!args[1].matches("^[0-9]+$")) {
-                    throw new InvalidIrcServerMainArgumentsException("Usage: java IrcServerMain <server_name> <port>");
+                    throw new InvalidIrcServerMainArgumentsException(USAGE);
+                }
+                String mode = Configuration.BLOCKING_MODE_STRING;
+                if (args.length == 3) {
+                    mode = args[2];
+                    if (!mode.equals(Configuration.BLOCKING_MODE_STRING) && !mode.equals(Configuration.VIRTUAL_MODE_STRING)
+                            && !mode.equals(Configuration.NIO_MODE_STRING)) {
+                        throw new InvalidIrcServerMainArgumentsException(USAGE);
+                    }
                 }
                 String serverName = args[0];
                 int port = Integer.parseInt(args[1]);
-                IrcServer irc = new IrcServer(serverName, port);
+                IrcServer irc = new IrcServer(new ServerContext(serverName), port, mode);
             }
         } catch (InvalidIrcServerMainArgumentsException invalidIrcServerMainArgumentsException) {
             System.out.println(invalidIrcServerMainArgumentsException.getMessage());
@@ -0,0 +1,144 @@
+import exception.DisconnectedException;
+
+/**
+ * The decoder which splits the bytes from the user into lines, ended by CR LF, LF or CR.
+ * A line is handed over as a range of the read buffer whenever it is complete within it, only the tail of a line
+ * split across two reads is copied, into a small buffer which is dropped again once the line is complete.
+ * A line longer than the IRC limit of 512 bytes with its CR LF is discarded up to its end, with one error reply.
+ * The lines completed by one read are handled as one batch, so their replies are written together.
+ * When a line puts the user over its flood limit the rest of the read is held back, the transport stops reading and
+ * hands the held bytes over again once the user is back within the limit.
+ */
+public class LineDecoder {
+
+    private static final int MAX_CONTENT_LENGTH = Configuration.MAX_LINE_LENGTH - 2;
+
+    private final ConnectionHandler connectionHandler;
+    private byte[] partial;
+    private int partialLength;
+    private boolean skipLineFeed;
+    private boolean discarding;
+    private byte[] held;
+    private int heldLength;
+
+    /**
+     * constructs a decoder for the connection.
+     * @param connectionHandler the connection the lines are handed to
+     */
+    public LineDecoder(ConnectionHandler connectionHandler) {
+        this.connectionHandler = connectionHandler;
+    }
+
+    /**
+     * handles every line completed by the bytes, and keeps the incomplete rest.
+     * @param bytes the bytes read
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @throws DisconnectedException the user has quit
+     */
+    public void decode(byte[] bytes, int offset, int length) throws DisconnectedException {
+        connectionHandler.recordActivity();
+        connectionHandler.beginBatch();
+        try {
+            split(bytes, offset, length);
+        } finally {
+            connectionHandler.endBatch();
+        }
+    }
+
+    /**
+     * handles the lines held back by the flood limit, until the limit holds back the next.
+     * @throws DisconnectedException the user has quit
+     */
+    public void decodeHeld() throws DisconnectedException {
+        if (held == null) {
+            return;
+        }
+        byte[] bytes = held;
+        int length = heldLength;
+        held = null;
+        heldLength = 0;
+        connectionHandler.beginBatch();
+        try {
+            split(bytes, 0, length);
+        } finally {
+            connectionHandler.endBatch();
+        }
+    }
+
+    private void split(byte[] bytes, int offset, int length) throws DisconnectedException {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            byte b = bytes[i];
+            if (b != '\n' && b != '\r') {
+                skipLineFeed = false;
+                continue;
+            }
+            if (b == '\n' && skipLineFeed) {
+                skipLineFeed = false;
+                lineStart = i + 1;
+                continue;
+            }
+            skipLineFeed = b == '\r';
+            int start = lineStart;
+            lineStart = i + 1;
+            endLine(bytes, start, i);
+            if (connectionHandler.isReadDelayed()) {
+                hold(bytes, lineStart, end);
+                return;
+            }
+        }
+        keep(bytes, lineStart, end);
+    }
+
+    private void endLine(byte[] bytes, int start, int end) throws DisconnectedException {
+        if (discarding) {
+            discarding = false;
+            return;
+        }
+        if (partialLength + end - start > MAX_CONTENT_LENGTH) {
+            partial = null;
+            partialLength = 0;
+            connectionHandler.sendError("Input line was too long");
+            return;
+        }
+        if (partialLength == 0) {
+            connectionHandler.handleLine(bytes, start, end);
+            return;
+        }
+        System.arraycopy(bytes, start, partial, partialLength, end - start);
+        int lineLength = partialLength + end - start;
+        byte[] line = partial;
+        partial = null;
+        partialLength = 0;
+        connectionHandler.handleLine(line, 0, lineLength);
+    }
+
+    private void hold(byte[] bytes, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        held = new byte[end - start];
+        heldLength = end - start;
+        System.arraycopy(bytes, start, held, 0, heldLength);
+    }
+
+    private void keep(byte[] bytes, int start, int end) {
+        if (discarding || start == end) {
+            return;
+        }
+        if (partialLength + end - start > MAX_CONTENT_LENGTH) {
+            partial = null;
+            partialLength = 0;
+            discarding = true;
+            connectionHandler.sendError("Input line was too long");
+            return;
+        }
+        if (partial == null) {
+            partial = new byte[MAX_CONTENT_LENGTH];
+        }
+        System.arraycopy(bytes, start, partial, partialLength, end - start);
+        partialLength += end - start;
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * The hand-written parser of the user's lines and of the command arguments.
+ * It accepts exactly what the regular expressions used before accepted, without compiling a pattern or allocating
+ * a matcher for every line.
+ */
+public abstract class LineParser {
+
+    /**
+     * parses a line into the message, the same as matching "^([A-Z]+)\s?(.*)" before.
+     * A leading ":prefix " is recorded in the message as well. The line is walked once: the command, then the
+     * arguments for line terminators. The parameters are split out of the arguments only when the message is asked
+     * for them.
+     * @param line the line from the user
+     * @param message the message to fill
+     * @return false if the line is not a valid command line
+     */
+    public static boolean parse(String line, IrcMessage message) {
+        message.reset(line);
+        int length = line.length();
+        int pos = 0;
+
+        if (length > 0 && line.charAt(0) == ':') {
+            while (pos < length && line.charAt(pos) != ' ') {
+                pos++;
+            }
+            message.setPrefixEnd(pos);
+            while (pos < length && line.charAt(pos) == ' ') {
+                pos++;
+            }
+        }
+
+        int commandStart = pos;
+        while (pos < length && isUpperCase(line.charAt(pos))) {
+            pos++;
+        }
+        if (pos == commandStart) {
+            return false;
+        }
+        message.setCommand(commandStart, pos);
+
+        if (pos < length && isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+        message.setArgumentsStart(pos);
+        for (; pos < length; pos++) {
+            if (isLineTerminator(line.charAt(pos))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * checks a nickname, the same as matching "^[A-Za-z_][\w]{0,8}".
+     * @param nickName the nickname
+     * @return the result of check
+     */
+    public static boolean isNickName(String nickName) {
+        int length = nickName.length();
+        if (length < 1 || length > Configuration.MAX_NICK_LENGTH || !isWordStart(nickName.charAt(0))) {
+            return false;
+        }
+        return isWordRun(nickName, 1, length);
+    }
+
+    /**
+     * checks a channel name, the same as matching "^\#[\w]+".
+     * @param channelName the channel name
+     * @return the result of check
+     */
+    public static boolean isChannelName(String channelName) {
+        int length = channelName.length();
+        return length >= 2 && channelName.charAt(0) == '#' && isWordRun(channelName, 1, length);
+    }
+
+    /**
+     * finds the end of the PRIVMSG targets, a comma separated list of targets each matching "#\w+" or
+     * "[A-Za-z_][\w]*", followed by "\s:(.*)".
+     * The message starts two characters after the returned index.
+     * @param arguments the arguments of PRIVMSG
+     * @return the end of the targets, or -1 if the arguments are invalid
+     */
+    public static int privmsgTargetEnd(String arguments) {
+        int length = arguments.length();
+        int pos = 0;
+        while (true) {
+            if (pos >= length) {
+                return -1;
+            }
+            if (arguments.charAt(pos) == '#') {
+                pos++;
+                if (pos >= length || !isWordChar(arguments.charAt(pos))) {
+                    return -1;
+                }
+            } else if (!isWordStart(arguments.charAt(pos))) {
+                return -1;
+            }
+            pos++;
+            while (pos < length && isWordChar(arguments.charAt(pos))) {
+                pos++;
+            }
+            if (pos < length && arguments.charAt(pos) == ',') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (pos + 1 < length && isWhitespace(arguments.charAt(pos)) && arguments.charAt(pos + 1) == ':') {
+            return pos;
+        }
+        return -1;
+    }
+
+    /**
+     * finds the end of the username in USER arguments, the same as matching "^([\S]+)\s0\s\*\s:(.*)".
+     * The real name starts six characters after the returned index.
+     * @param arguments the arguments of USER
+     * @return the end of the username, or -1 if the arguments are invalid
+     */
+    public static int userNameEnd(String arguments) {
+        int length = arguments.length();
+        int pos = 0;
+        while (pos < length && !isWhitespace(arguments.charAt(pos))) {
+            pos++;
+        }
+        if (pos == 0 || pos + 6 > length) {
+            return -1;
+        }
+        if (isWhitespace(arguments.charAt(pos)) && arguments.charAt(pos + 1) == '0'
+                && isWhitespace(arguments.charAt(pos + 2)) && arguments.charAt(pos + 3) == '*'
+                && isWhitespace(arguments.charAt(pos + 4)) && arguments.charAt(pos + 5) == ':') {
+            return pos;
+        }
+        return -1;
+    }
+
+    /**
+     * checks a character of regex class \s.
+     * @param c the character
+     * @return the result of check
+     */
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isUpperCase(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isWordStart(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_';
+    }
+
+    private static boolean isWordChar(char c) {
+        return isWordStart(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isWordRun(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isWordChar(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
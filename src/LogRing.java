@@ -0,0 +1,117 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The bounded ring the log events wait in, written by any number of threads and read by the log writer only.
+ * A writer claims a slot with one compare-and-set on the tail and publishes it through the slot's sequence, so
+ * writers never lock and never wait for the reader. An event which finds the ring full is dropped and counted.
+ * The fields of the events live in parallel arrays, so logging an event does not allocate.
+ */
+public class LogRing {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] levels;
+    private final long[] times;
+    private final String[] sources;
+    private final String[] messages;
+    private final Object[] details;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long head;
+
+    /**
+     * constructs an empty ring.
+     * @param capacity the number of events, rounded up to a power of two
+     */
+    public LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.levels = new int[size];
+        this.times = new long[size];
+        this.sources = new String[size];
+        this.messages = new String[size];
+        this.details = new Object[size];
+    }
+
+    /**
+     * adds an event, or drops it if the ring is full.
+     * @param level the level of the event
+     * @param time the time of the event in milliseconds
+     * @param source the part of the server logging the event
+     * @param message the message
+     * @param detail an immutable value appended to the message, or null
+     * @return false if the event was dropped
+     */
+    public boolean offer(int level, long time, String source, String message, Object detail) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        levels[slot] = level;
+        times[slot] = time;
+        sources[slot] = source;
+        messages[slot] = message;
+        details[slot] = detail;
+        sequences.set(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * hands the oldest event to the consumer and frees its slot, it must only be called by the log writer.
+     * @param consumer the consumer of the event
+     * @return false if the ring is empty
+     */
+    public boolean poll(Consumer consumer) {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return false;
+        }
+        consumer.accept(levels[slot], times[slot], sources[slot], messages[slot], details[slot]);
+        sources[slot] = null;
+        messages[slot] = null;
+        details[slot] = null;
+        sequences.set(slot, head + mask + 1);
+        head++;
+        return true;
+    }
+
+    /**
+     * gets the number of events dropped because the ring was full.
+     * @return the number of events
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * The consumer of the events taken out of the ring.
+     */
+    public interface Consumer {
+
+        /**
+         * consumes one event.
+         * @param level the level of the event
+         * @param time the time of the event in milliseconds
+         * @param source the part of the server which logged the event
+         * @param message the message
+         * @param detail the value appended to the message, or null
+         */
+        void accept(int level, long time, String source, String message, Object detail);
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * One file of the message log, mapped into memory at its full size when it is created and filled from the start.
+ * A record is its length, its time, the length and the name of its target, then the line as it was sent.
+ * The unwritten rest of the file stays zero, so a length of zero ends the records.
+ * Next to it a sparse index gets, for every block of the file, one entry per target with a record in the block:
+ * the time and the offset of the first of its records there. A reader looks up the blocks of one channel and only
+ * touches those pages of the file.
+ */
+public class LogSegment {
+
+    /**
+     * The file name suffix of the segments.
+     */
+    public static final String SEGMENT_SUFFIX = ".seg";
+    /**
+     * The file name suffix of the sparse indexes.
+     */
+    public static final String INDEX_SUFFIX = ".idx";
+    /**
+     * The size of the blocks the index has entries for.
+     */
+    public static final int INDEX_BLOCK_SIZE = 64 * 1024;
+    /**
+     * The bytes of a record before its target name: the length, the time and the length of the target name.
+     */
+    public static final int RECORD_HEADER_SIZE = 4 + 8 + 2;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final FileOutputStream indexFile;
+    private final DataOutputStream index;
+    private final Set<String> indexedTargets = new HashSet<String>();
+    private int block = -1;
+
+    /**
+     * creates a segment file and its index.
+     * @param directory the directory of the log
+     * @param name the name of the files without suffix
+     * @param size the size of the segment file
+     * @throws IOException the files cannot be created
+     */
+    public LogSegment(Path directory, String name, int size) throws IOException {
+        this.channel = FileChannel.open(directory.resolve(name + SEGMENT_SUFFIX), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            this.indexFile = new FileOutputStream(directory.resolve(name + INDEX_SUFFIX).toFile());
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+        this.index = new DataOutputStream(new BufferedOutputStream(indexFile));
+    }
+
+    /**
+     * gets the name of the segment files starting with a record of the given time.
+     * The names sort by time, and the sequence number tells apart segments started in the same millisecond.
+     * @param time the time of the first record in milliseconds
+     * @param sequence the number of the segment
+     * @return the name without suffix
+     */
+    public static String fileName(long time, int sequence) {
+        return String.format("%020d-%06d", time, sequence);
+    }
+
+    /**
+     * gets the time of the first record from the name of a segment file.
+     * @param fileName the name of the file
+     * @return the time in milliseconds
+     */
+    public static long startTime(String fileName) {
+        return Long.parseLong(fileName.substring(0, 20));
+    }
+
+    /**
+     * checks whether the files of a segment with that name exist.
+     * @param directory the directory of the log
+     * @param name the name of the files without suffix
+     * @return the result of check
+     */
+    public static boolean exists(Path directory, String name) {
+        return Files.exists(directory.resolve(name + SEGMENT_SUFFIX));
+    }
+
+    /**
+     * appends a record.
+     * @param time the time of the record in milliseconds
+     * @param target the channel name or the nickname the line was sent to
+     * @param line the line as it was sent
+     * @return false if the segment has no room left for the record
+     * @throws IOException the index cannot be written
+     */
+    public boolean append(long time, String target, byte[] line) throws IOException {
+        byte[] targetBytes = target.getBytes(StandardCharsets.ISO_8859_1);
+        int length = RECORD_HEADER_SIZE + targetBytes.length + line.length;
+        int position = data.position();
+        if (position + length > data.capacity()) {
+            return false;
+        }
+        if (position / INDEX_BLOCK_SIZE != block) {
+            block = position / INDEX_BLOCK_SIZE;
+            indexedTargets.clear();
+        }
+        if (indexedTargets.add(target)) {
+            index.writeLong(time);
+            index.writeInt(position);
+            index.writeShort(targetBytes.length);
+            index.write(targetBytes);
+        }
+        data.putInt(length);
+        data.putLong(time);
+        data.putShort((short) targetBytes.length);
+        data.put(targetBytes);
+        data.put(line);
+        return true;
+    }
+
+    /**
+     * writes the records and the index through to the disk.
+     * @throws IOException the files cannot be written
+     */
+    public void force() throws IOException {
+        data.force();
+        index.flush();
+        indexFile.getChannel().force(false);
+    }
+
+    /**
+     * writes everything through to the disk and closes the files.
+     * @throws IOException the files cannot be written
+     */
+    public void close() throws IOException {
+        try {
+            force();
+        } finally {
+            try {
+                index.close();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The durable log of the delivered PRIVMSG lines, kept in segment files which roll over at a fixed size.
+ * A connection only hands the line to a bounded ring, the lines are the same immutable bytes the users get.
+ * The connections claim the slots of the ring with one compare-and-set and never lock, and one writer thread takes
+ * the lines out, copies them into the mapped segment and writes the segment through to the disk at most once per
+ * fsync interval, so a burst of messages costs one fsync.
+ * A connection never waits for the disk. A line which finds the ring full is counted as overflow and, by the
+ * overflow policy, either dropped, for which the writer logs a gap marker with the number of lines missing, or
+ * refused, so the message is not delivered at all.
+ * The log is off unless irc.messageLog.dir names its directory.
+ */
+public class MessageLog {
+
+    /**
+     * The overflow policy which delivers the line without logging it and logs a gap marker in its place.
+     */
+    public static final String DROP_POLICY = "drop";
+    /**
+     * The overflow policy which does not deliver a line the log has no room for.
+     */
+    public static final String REFUSE_POLICY = "refuse";
+    /**
+     * The target of the gap markers, which is neither a channel name nor a nickname.
+     */
+    public static final String GAP_TARGET = "*";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long fsyncMillis;
+    private final boolean refusing;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final String[] targets;
+    private final byte[][] lines;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong gapRecords = new AtomicLong();
+    private final AtomicBoolean overflowing = new AtomicBoolean();
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder lostRecords = new LongAdder();
+    private final LongAdder overflowRecords = new LongAdder();
+    private long head;
+    private long seenOverflowRecords;
+    private volatile boolean stopping;
+    private LogSegment segment;
+    private int segmentSequence;
+    private long lastTime;
+    private boolean dirty;
+    private Thread writer;
+
+    /**
+     * constructs the log and starts its writer, or a log which keeps nothing if there is no directory.
+     * @param directory the directory of the segment files, or null
+     * @param segmentBytes the size of a segment file
+     * @param fsyncMillis the longest time a written line waits to be written through to the disk
+     * @param maxPendingBytes the size of the lines which can wait for the writer, the ring has room for this many
+     *                        lines of the longest length
+     * @param overflowPolicy the overflow policy, drop or refuse
+     */
+    public MessageLog(String directory, int segmentBytes, long fsyncMillis, long maxPendingBytes,
+                      String overflowPolicy) {
+        this.directory = directory == null ? null : Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.fsyncMillis = fsyncMillis;
+        this.refusing = REFUSE_POLICY.equalsIgnoreCase(overflowPolicy);
+        int capacity = this.directory == null ? 2
+                : (int) Math.min(1 << 30, Math.max(2, maxPendingBytes / Configuration.MAX_LINE_LENGTH));
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.times = new long[size];
+        this.targets = new String[size];
+        this.lines = new byte[size][];
+        if (this.directory != null) {
+            writer = new Thread(this::writeRecords, "message-log");
+            writer.setDaemon(true);
+            writer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+        }
+    }
+
+    /**
+     * checks whether the log keeps the lines.
+     * @return the result of check
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * adds a line to the log before it is delivered.
+     * @param target the channel name or the nickname the line is sent to
+     * @param line the line as it is sent
+     * @return false if the log is full and refuses the line, which must then not be delivered
+     */
+    public boolean append(String target, EncodedLine line) {
+        if (directory == null) {
+            return true;
+        }
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                return overflow();
+            }
+        }
+        times[slot] = System.currentTimeMillis();
+        targets[slot] = target;
+        lines[slot] = line.getBytes();
+        sequences.set(slot, position + 1);
+        if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    private boolean overflow() {
+        overflowRecords.increment();
+        if (overflowing.compareAndSet(false, true)) {
+            ServerLog.warn("MessageLog", "the writer is behind, lines are " + (refusing ? "refused" : "dropped"),
+                    mask + 1);
+        }
+        if (refusing) {
+            return false;
+        }
+        gapRecords.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * gets the number of lines written to the log.
+     * @return the number of lines
+     */
+    public long getRecords() {
+        return records.sum();
+    }
+
+    /**
+     * gets the number of lines which found the writer too far behind, and were dropped or refused.
+     * @return the number of lines
+     */
+    public long getOverflowRecords() {
+        return overflowRecords.sum();
+    }
+
+    /**
+     * gets the number of lines which could not be written because of a disk error.
+     * @return the number of lines
+     */
+    public long getLostRecords() {
+        return lostRecords.sum();
+    }
+
+    private void stop() {
+        stopping = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRecords() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ioe) {
+            ServerLog.error("MessageLog", "cannot create the directory", ioe.getMessage());
+        }
+        long lastForce = System.currentTimeMillis();
+        while (true) {
+            boolean stopped = stopping;
+            if (!writeRing() && !stopped) {
+                sleeping.set(true);
+                if (isEmpty() && !stopping) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, fsyncMillis)));
+                }
+                sleeping.set(false);
+            }
+            long now = System.currentTimeMillis();
+            if (dirty && (stopped || now - lastForce >= fsyncMillis)) {
+                force();
+                lastForce = now;
+            }
+            if (stopped) {
+                closeSegment();
+                return;
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    private boolean writeRing() {
+        boolean written = false;
+        while (!isEmpty()) {
+            int slot = (int) head & mask;
+            write(times[slot], targets[slot], lines[slot]);
+            targets[slot] = null;
+            lines[slot] = null;
+            sequences.set(slot, head + mask + 1);
+            head++;
+            written = true;
+        }
+        long gap = gapRecords.getAndSet(0);
+        if (gap > 0) {
+            String marker = "GAP " + gap + " lines not logged\r\n";
+            write(System.currentTimeMillis(), GAP_TARGET, marker.getBytes(StandardCharsets.ISO_8859_1));
+            written = true;
+        }
+        long overflow = overflowRecords.sum();
+        if (overflow == seenOverflowRecords) {
+            overflowing.set(false);
+        }
+        seenOverflowRecords = overflow;
+        return written;
+    }
+
+    private void write(long recordTime, String target, byte[] line) {
+        long time = Math.max(recordTime, lastTime);
+        try {
+            if (segment == null || !segment.append(time, target, line)) {
+                closeSegment();
+                openSegment(time);
+                if (!segment.append(time, target, line)) {
+                    lostRecords.increment();
+                    return;
+                }
+            }
+            lastTime = time;
+            dirty = true;
+            records.increment();
+        } catch (IOException ioe) {
+            ServerLog.error("MessageLog", "cannot write the segment", ioe.getMessage());
+            lostRecords.increment();
+            closeSegment();
+        }
+    }
+
+    private void openSegment(long time) throws IOException {
+        String name = LogSegment.fileName(time, segmentSequence++);
+        while (LogSegment.exists(directory, name)) {
+            name = LogSegment.fileName(time, segmentSequence++);
+        }
+        segment = new LogSegment(directory, name, segmentBytes);
+        ServerLog.info("MessageLog", "new segment", name);
+    }
+
+    private void force() {
+        try {
+            if (segment != null) {
+                segment.force();
+            }
+            dirty = false;
+        } catch (IOException ioe) {
+            ServerLog.error("MessageLog", "cannot force the segment", ioe.getMessage());
+        }
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException ioe) {
+            ServerLog.error("MessageLog", "cannot close the segment", ioe.getMessage());
+        }
+        segment = null;
+        dirty = false;
+    }
+}
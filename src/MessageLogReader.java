@@ -0,0 +1,211 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tool which prints the lines of the message log sent to one channel or user within a time range, together with
+ * the gap markers of the lines the log had to drop, as any of those could have been sent to the target.
+ * The segments are mapped read only and only the blocks the sparse index names for the target are read, so a
+ * segment is never loaded into the heap.
+ */
+public class MessageLogReader {
+
+    private static final String USAGE = "Usage: java MessageLogReader <directory> <channel|nickname> [from] [to]"
+            + ", times as ISO-8601 instants or milliseconds";
+
+    private final Path directory;
+    private final byte[] targetBytes;
+    private final byte[] gapBytes = MessageLog.GAP_TARGET.getBytes(StandardCharsets.ISO_8859_1);
+    private final long from;
+    private final long to;
+
+    /**
+     * constructs a reader of one target.
+     * @param directory the directory of the log
+     * @param target the channel name or the nickname
+     * @param from the earliest time in milliseconds
+     * @param to the latest time in milliseconds
+     */
+    public MessageLogReader(Path directory, String target, long from, long to) {
+        this.directory = directory;
+        this.targetBytes = target.getBytes(StandardCharsets.ISO_8859_1);
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * prints the lines of a target from the command line.
+     * @param args the directory, the target and the optional time range
+     * @throws IOException the log cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.out.println(USAGE);
+            return;
+        }
+        long from = args.length > 2 ? parseTime(args[2]) : 0;
+        long to = args.length > 3 ? parseTime(args[3]) : Long.MAX_VALUE;
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 64 * 1024), false);
+        new MessageLogReader(Paths.get(args[0]), args[1], from, to).copyTo(out);
+        out.flush();
+    }
+
+    private static long parseTime(String time) {
+        if (time.matches("^[0-9]+$")) {
+            return Long.parseLong(time);
+        }
+        return Instant.parse(time).toEpochMilli();
+    }
+
+    /**
+     * writes the lines of the target within the time range, each after its time.
+     * @param out the stream the lines are written to
+     * @throws IOException the log cannot be read
+     */
+    public void copyTo(OutputStream out) throws IOException {
+        List<String> names = segmentNames();
+        for (int i = 0; i < names.size(); i++) {
+            long start = LogSegment.startTime(names.get(i));
+            if (start > to) {
+                break;
+            }
+            if (i + 1 < names.size() && LogSegment.startTime(names.get(i + 1)) < from) {
+                continue;
+            }
+            copySegment(names.get(i), out);
+        }
+    }
+
+    private List<String> segmentNames() throws IOException {
+        List<String> names = new ArrayList<String>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + LogSegment.SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                names.add(name.substring(0, name.length() - LogSegment.SEGMENT_SUFFIX.length()));
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private void copySegment(String name, OutputStream out) throws IOException {
+        List<Integer> blocks = blockOffsets(name);
+        if (blocks.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(name + LogSegment.SEGMENT_SUFFIX),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int offset : blocks) {
+                if (!copyBlock(data, offset, out)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<Integer> blockOffsets(String name) throws IOException {
+        List<Integer> offsets = new ArrayList<Integer>();
+        Path indexFile = directory.resolve(name + LogSegment.INDEX_SUFFIX);
+        try (InputStream file = Files.newInputStream(indexFile);
+             DataInputStream index = new DataInputStream(new BufferedInputStream(file))) {
+            while (true) {
+                long time;
+                int offset;
+                byte[] entryTarget;
+                try {
+                    time = index.readLong();
+                    offset = index.readInt();
+                    entryTarget = new byte[index.readUnsignedShort()];
+                    index.readFully(entryTarget);
+                } catch (EOFException eofException) {
+                    break;
+                }
+                if (!isTarget(entryTarget, targetBytes) && !isTarget(entryTarget, gapBytes)) {
+                    continue;
+                }
+                if (time > to) {
+                    break;
+                }
+                if (time < from) {
+                    offsets.clear();
+                }
+                int last = offsets.size() - 1;
+                int block = offset / LogSegment.INDEX_BLOCK_SIZE;
+                if (last < 0 || offsets.get(last) / LogSegment.INDEX_BLOCK_SIZE != block) {
+                    offsets.add(offset);
+                }
+            }
+        }
+        return offsets;
+    }
+
+    private boolean copyBlock(MappedByteBuffer data, int offset, OutputStream out) throws IOException {
+        int blockEnd = (offset / LogSegment.INDEX_BLOCK_SIZE + 1) * LogSegment.INDEX_BLOCK_SIZE;
+        int position = offset;
+        while (position < blockEnd && position + LogSegment.RECORD_HEADER_SIZE <= data.capacity()) {
+            int length = data.getInt(position);
+            if (length == 0) {
+                return false;
+            }
+            long time = data.getLong(position + 4);
+            int targetLength = data.getShort(position + 12) & 0xffff;
+            int targetStart = position + LogSegment.RECORD_HEADER_SIZE;
+            if (time > to) {
+                return false;
+            }
+            if (time >= from && (matches(data, targetStart, targetLength, targetBytes)
+                    || matches(data, targetStart, targetLength, gapBytes))) {
+                int lineStart = targetStart + targetLength;
+                byte[] line = new byte[position + length - lineStart];
+                data.get(lineStart, line);
+                out.write(Instant.ofEpochMilli(time).toString().getBytes(StandardCharsets.ISO_8859_1));
+                out.write(' ');
+                out.write(line);
+            }
+            position += length;
+        }
+        return true;
+    }
+
+    private static boolean isTarget(byte[] bytes, byte[] target) {
+        if (bytes.length != target.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(MappedByteBuffer data, int start, int length, byte[] target) {
+        if (length != target.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data.get(start + i) != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The event loop owns one selector and serves the reads and writes of many connections on a single thread.
+ */
+public class NioEventLoop extends Thread {
+
+    private ServerContext context;
+    private Selector selector;
+    private ConcurrentLinkedQueue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
+    private ConcurrentLinkedQueue<NioTransport> pendingWrites = new ConcurrentLinkedQueue<NioTransport>();
+    private ConcurrentLinkedQueue<NioTransport> pendingReads = new ConcurrentLinkedQueue<NioTransport>();
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(Configuration.WRITE_BUFFER_SIZE);
+
+    /**
+     * constructs an event loop.
+     * @param context the state shared by every connection of the server
+     * @param index the index of this loop, used to name the thread
+     * @throws IOException cannot open the selector
+     */
+    public NioEventLoop(ServerContext context, int index) throws IOException {
+        super("irc-event-loop-" + index);
+        this.context = context;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * hands an accepted connection to this loop, it will be registered on the loop thread.
+     * @param channel the accepted socket channel
+     */
+    public void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * asks the loop to write the queued lines of the transport.
+     * @param transport the transport which has lines to write
+     */
+    public void requestWrite(NioTransport transport) {
+        pendingWrites.add(transport);
+        if (Thread.currentThread() != this) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * asks the loop to read from the transport again, after it stopped for the flood limit.
+     * @param transport the transport to read from
+     */
+    public void resumeReading(NioTransport transport) {
+        pendingReads.add(transport);
+        selector.wakeup();
+    }
+
+    /**
+     * gets the buffer which the transports of this loop copy their queued lines into before writing.
+     * @return the write buffer, only used on the loop thread
+     */
+    public ByteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /**
+     * selects and dispatches the ready connections until the selector is closed.
+     */
+    public void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+                registerPendingChannels();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    NioTransport transport = (NioTransport) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            transport.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            transport.write();
+                        }
+                    } catch (RuntimeException runtimeException) {
+                        fail(transport, runtimeException);
+                    }
+                }
+
+                NioTransport transport;
+                while ((transport = pendingWrites.poll()) != null) {
+                    try {
+                        transport.write();
+                    } catch (RuntimeException runtimeException) {
+                        fail(transport, runtimeException);
+                    }
+                }
+                while ((transport = pendingReads.poll()) != null) {
+                    try {
+                        transport.resumeReading();
+                    } catch (RuntimeException runtimeException) {
+                        fail(transport, runtimeException);
+                    }
+                }
+            } catch (IOException ioe) {
+                ServerLog.warn("NioEventLoop", "select failed", ioe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * closes the connection whose handling failed, the other connections of the loop go on.
+     * @param transport the transport of the connection
+     * @param runtimeException the failure
+     */
+    private void fail(NioTransport transport, RuntimeException runtimeException) {
+        ServerLog.error("NioEventLoop", "connection failed, closing it", runtimeException);
+        try {
+            transport.close();
+        } catch (RuntimeException closeException) {
+            ServerLog.error("NioEventLoop", "close failed", closeException);
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioTransport transport = new NioTransport(context, channel, key, this);
+                key.attach(transport);
+            } catch (IOException ioe) {
+                ServerLog.warn("NioEventLoop", "register failed", ioe.getMessage());
+                context.getAdmissionControl().release(channel.socket().getInetAddress());
+                try {
+                    channel.close();
+                } catch (IOException closeException) {
+                    ServerLog.warn("NioEventLoop", "close failed", closeException.getMessage());
+                }
+            }
+        }
+    }
+}
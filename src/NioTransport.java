@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The non-blocking transport, its reads and writes are driven by the event loop which owns it.
+ * The lines to the user are queued, and the event loop writes all of the queued lines with one socket write.
+ */
+public class NioTransport implements ClientTransport {
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private NioEventLoop eventLoop;
+    private TimerWheel timerWheel;
+    private ConnectionHandler connectionHandler;
+    private ServerMetrics metrics;
+
+    private BufferPool readBufferPool;
+    private LineDecoder lineDecoder;
+    private OutboundQueue outboundQueue;
+    private AtomicBoolean writeRequested = new AtomicBoolean();
+    private volatile boolean aborted;
+    private volatile boolean closed;
+
+    /**
+     * constructs a non-blocking transport, it must be called on the event loop thread.
+     * @param context the state shared by every connection of the server
+     * @param channel the socket channel used to communicate with server
+     * @param key the selection key of the channel
+     * @param eventLoop the event loop which owns the channel
+     */
+    public NioTransport(ServerContext context, SocketChannel channel, SelectionKey key, NioEventLoop eventLoop) {
+        this.channel = channel;
+        this.key = key;
+        this.eventLoop = eventLoop;
+        this.timerWheel = context.getTimerWheel();
+        this.connectionHandler = new ConnectionHandler(context, this, channel.socket().getInetAddress());
+        this.outboundQueue = connectionHandler.getOutboundQueue();
+        this.metrics = context.getMetrics();
+        this.readBufferPool = context.getReadBufferPool();
+        this.lineDecoder = new LineDecoder(connectionHandler);
+    }
+
+    /**
+     * reads the available bytes and handles every complete line, called by the event loop.
+     * The read buffer is borrowed from the pool for the read only. A user over its flood limit is taken out of the
+     * reads of the selector until it is back within it.
+     */
+    public void read() {
+        ByteBuffer readBuffer = readBufferPool.acquire();
+        try {
+            int count = channel.read(readBuffer);
+            if (count < 0) {
+                close();
+                return;
+            }
+            metrics.recordBytesIn(count);
+            lineDecoder.decode(readBuffer.array(), 0, count);
+            pauseReadingIfDelayed();
+        } catch (Exception e) {
+            ServerLog.info("NioTransport", "connection ended", e.getMessage());
+            close();
+        } finally {
+            readBufferPool.release(readBuffer);
+        }
+    }
+
+    /**
+     * writes as many queued lines as the socket accepts, called by the event loop.
+     */
+    public void write() {
+        writeRequested.set(false);
+        if (closed) {
+            return;
+        }
+        if (aborted) {
+            close();
+            return;
+        }
+        try {
+            if (flush()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                connectionHandler.outboundDrained();
+            } else {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException ioe) {
+            ServerLog.warn("NioTransport", "write failed", ioe.getMessage());
+            close();
+        }
+    }
+
+    private boolean flush() throws IOException {
+        ByteBuffer buffer = eventLoop.getWriteBuffer();
+        while (true) {
+            buffer.clear();
+            int count = outboundQueue.fill(buffer);
+            if (count == 0) {
+                return true;
+            }
+            buffer.flip();
+            int written = channel.write(buffer);
+            outboundQueue.consume(written);
+            metrics.recordBytesOut(written);
+            if (written < count) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * handles the lines held back by the flood limit, and lets the selector report the reads of the channel again
+     * if the user is within its limit, called by the event loop.
+     */
+    public void resumeReading() {
+        if (closed || !key.isValid()) {
+            return;
+        }
+        try {
+            lineDecoder.decodeHeld();
+        } catch (Exception e) {
+            ServerLog.info("NioTransport", "connection ended", e.getMessage());
+            close();
+            return;
+        }
+        if (!pauseReadingIfDelayed()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    private boolean pauseReadingIfDelayed() {
+        long delay = connectionHandler.takeReadDelayMillis();
+        if (delay <= 0) {
+            return false;
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        timerWheel.schedule(() -> eventLoop.resumeReading(this), delay);
+        return true;
+    }
+
+    /**
+     * lets the event loop write the queued lines.
+     */
+    public void requestWrite() {
+        if (!closed && writeRequested.compareAndSet(false, true)) {
+            eventLoop.requestWrite(this);
+        }
+    }
+
+    /**
+     * lets the event loop close the channel, after one attempt to write the ERROR line.
+     */
+    public void abort() {
+        aborted = true;
+        if (!closed) {
+            eventLoop.requestWrite(this);
+        }
+    }
+
+    /**
+     * closes the channel after writing what the socket still accepts, it must be called on the event loop thread.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        ServerLog.info("ConnectionHandler", "cleaning up and exiting", connectionHandler.getNickName());
+        key.cancel();
+        outboundQueue.close();
+        connectionHandler.connectionClosed();
+        try {
+            flush();
+        } catch (IOException ioe) {
+            ServerLog.warn("NioTransport", "flush failed", ioe.getMessage());
+        }
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            ServerLog.warn("NioTransport", "close failed", ioe.getMessage());
+        }
+    }
+}
@@ -0,0 +1,282 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The bounded queue of encoded lines waiting to be written to one user.
+ * Senders only append to it, the writer of the connection copies the queued lines into one buffer and writes them
+ * together. The queued bytes and lines are tracked, and the backpressure policy is applied once they go over the
+ * limits.
+ * While the connection handles a batch of lines the queue is held, so the writer waits for the whole batch of
+ * replies unless they already fill a write buffer.
+ * The lines copied by fill may be on their way to the socket until consume is called, they are never dropped or
+ * replaced before that, so the bytes written always match the lines consumed.
+ */
+public class OutboundQueue {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<EncodedLine> lines = new ArrayDeque<EncodedLine>();
+    private final int maxLines;
+    private final long maxBytes;
+    private final BackpressurePolicy policy;
+    private long queuedBytes;
+    private int headOffset;
+    private int inFlightLines;
+    private boolean closed;
+    private boolean held;
+
+    /**
+     * constructs an outbound queue.
+     * @param maxLines the number of queued lines above which the policy fires
+     * @param maxBytes the number of queued bytes above which the policy fires
+     * @param policy the backpressure policy
+     */
+    public OutboundQueue(int maxLines, long maxBytes, BackpressurePolicy policy) {
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * appends a line to the queue, applying the backpressure policy if the limits are crossed.
+     * Lines offered after the queue is closed are ignored.
+     * JOIN, PART and QUIT lines may go up to twice the limits before the user has to be disconnected.
+     * @param line the encoded line
+     * @return false if the user reads too slowly and must be disconnected
+     */
+    public boolean offer(EncodedLine line) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            int length = line.getBytes().length;
+            if (isOver(length, 1)) {
+                if (policy == BackpressurePolicy.DISCONNECT) {
+                    policy.fire(0);
+                    return false;
+                }
+                int dropped = policy == BackpressurePolicy.DROP_OLDEST ? dropOldest(length) : 0;
+                if (isOver(length, 1) && line.isDroppable()) {
+                    policy.fire(dropped + 1);
+                    return true;
+                }
+                if (dropped > 0) {
+                    policy.fire(dropped);
+                }
+                if (isOver(length, 2)) {
+                    BackpressurePolicy.DISCONNECT.fire(0);
+                    return false;
+                }
+            }
+            lines.addLast(line);
+            queuedBytes += length;
+            if (isReady()) {
+                notEmpty.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isReady() {
+        return !held || queuedBytes >= Configuration.WRITE_BUFFER_SIZE || lines.size() >= maxLines / 2;
+    }
+
+    private boolean isOver(int length, int factor) {
+        return lines.size() + 1 > maxLines * factor || queuedBytes + length > maxBytes * factor;
+    }
+
+    /**
+     * drops droppable lines from the head until the new line fits, or no droppable line is left.
+     * @param length the length of the new line
+     * @return the number of lines dropped
+     */
+    private int dropOldest(int length) {
+        Iterator<EncodedLine> iterator = lines.iterator();
+        int kept = protectedLines();
+        int dropped = 0;
+        while (iterator.hasNext() && isOver(length, 1)) {
+            EncodedLine queued = iterator.next();
+            if (kept > 0) {
+                kept--;
+            } else if (queued.isDroppable()) {
+                iterator.remove();
+                queuedBytes -= queued.getBytes().length;
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * gets the number of lines at the head which must stay: the lines copied by the last fill, or at least the
+     * line partly written already.
+     * @return the number of lines
+     */
+    private int protectedLines() {
+        return Math.max(inFlightLines, headOffset > 0 ? 1 : 0);
+    }
+
+    /**
+     * copies as many queued bytes as fit into the buffer, starting at the first unwritten byte.
+     * The lines stay in the queue until they are consumed, and every call must be followed by consume.
+     * @param dst the buffer to fill
+     * @return the number of bytes copied
+     */
+    public int fill(ByteBuffer dst) {
+        lock.lock();
+        try {
+            int start = dst.position();
+            int offset = headOffset;
+            int copiedLines = 0;
+            Iterator<EncodedLine> iterator = lines.iterator();
+            while (iterator.hasNext() && dst.hasRemaining()) {
+                byte[] line = iterator.next().getBytes();
+                int length = Math.min(line.length - offset, dst.remaining());
+                dst.put(line, offset, length);
+                offset = 0;
+                copiedLines++;
+            }
+            inFlightLines = copiedLines;
+            return dst.position() - start;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * removes the bytes which have been written from the head of the queue.
+     * @param count the number of bytes written
+     * @return true if no line is left in the queue
+     */
+    public boolean consume(int count) {
+        lock.lock();
+        try {
+            queuedBytes -= count;
+            while (count > 0) {
+                EncodedLine head = lines.peekFirst();
+                int left = head.getBytes().length - headOffset;
+                if (count >= left) {
+                    lines.pollFirst();
+                    headOffset = 0;
+                    count -= left;
+                } else {
+                    headOffset += count;
+                    count = 0;
+                }
+            }
+            inFlightLines = 0;
+            return lines.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * makes the writer wait for the lines queued from now on until release is called.
+     */
+    public void hold() {
+        lock.lock();
+        try {
+            held = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * lets the writer write the lines queued since hold was called.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            held = false;
+            if (!lines.isEmpty()) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * waits until the queue has a line to write or is closed.
+     * @return false if the queue is closed and has been drained
+     * @throws InterruptedException the waiting thread is interrupted
+     */
+    public boolean await() throws InterruptedException {
+        lock.lock();
+        try {
+            while ((lines.isEmpty() || !isReady()) && !closed) {
+                notEmpty.await();
+            }
+            return !lines.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * replaces everything not yet on its way to the socket with a last line, and closes the queue.
+     * @param line the last line to write
+     */
+    public void closeWith(EncodedLine line) {
+        lock.lock();
+        try {
+            int kept = protectedLines();
+            while (lines.size() > kept) {
+                queuedBytes -= lines.pollLast().getBytes().length;
+            }
+            lines.addLast(line);
+            queuedBytes += line.getBytes().length;
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * closes the queue, later lines are ignored and the waiting writer wakes up to drain the rest.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * gets the number of bytes waiting to be written.
+     * @return the queued bytes
+     */
+    public long getQueuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * gets the number of lines waiting to be written.
+     * @return the queued lines
+     */
+    public int getQueuedLines() {
+        lock.lock();
+        try {
+            return lines.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
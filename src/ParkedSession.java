@@ -0,0 +1,71 @@
+/**
+ * The state of a registered user whose connection dropped, kept for the grace period so the user can resume it.
+ * The user stays in the channels and keeps the nickname, the lines sent to it meanwhile wait in a bounded buffer,
+ * the oldest dropped first. Once resumed, the buffered lines go to the new connection before it takes the place of the
+ * old one, and so does every line sent to the old connection after that, from a member snapshot taken before the
+ * switch.
+ */
+public class ParkedSession {
+
+    private final ConnectionHandler handler;
+    private final EncodedLine[] missed;
+    private int first;
+    private int count;
+    private long dropped;
+    private ConnectionHandler resumedBy;
+
+    /**
+     * constructs the parked session of a connection.
+     * @param handler the connection of the user
+     * @param maxLines the number of missed lines kept
+     */
+    public ParkedSession(ConnectionHandler handler, int maxLines) {
+        this.handler = handler;
+        this.missed = new EncodedLine[Math.max(1, maxLines)];
+    }
+
+    /**
+     * gets the connection the user had.
+     * @return the connection
+     */
+    public ConnectionHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * keeps a line the user missed, or passes it on if the session is already resumed.
+     * @param line the encoded line
+     */
+    public synchronized void add(EncodedLine line) {
+        if (resumedBy != null) {
+            resumedBy.send(line);
+            return;
+        }
+        if (count == missed.length) {
+            first = (first + 1) % missed.length;
+            count--;
+            dropped++;
+        }
+        missed[(first + count) % missed.length] = line;
+        count++;
+    }
+
+    /**
+     * sends the missed lines to the new connection of the user, then hands the user over to it.
+     * Both run under the lock of the session, so a sender still holding the old connection waits in add until the
+     * missed lines are queued, and the lines sent through the new connection all come after them.
+     * @param next the new connection
+     * @param handOver the switch of the user to the new connection, run after the missed lines are queued
+     * @return the number of missed lines which were dropped
+     */
+    public synchronized long resumeTo(ConnectionHandler next, Runnable handOver) {
+        for (int i = 0; i < count; i++) {
+            next.send(missed[(first + i) % missed.length]);
+            missed[(first + i) % missed.length] = null;
+        }
+        count = 0;
+        handOver.run();
+        resumedBy = next;
+        return dropped;
+    }
+}
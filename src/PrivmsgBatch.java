@@ -0,0 +1,106 @@
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import exception.MessageLogFullException;
+import exception.NoChannelExistsException;
+import exception.NoUserExistsException;
+
+/**
+ * One PRIVMSG sent to a list of targets. The sender and the message are encoded once for all targets, only the
+ * target name is copied into the line of every target. A user reached through more than one target gets the message
+ * once, through the first of them, which is tracked by the user ids the channels are kept as.
+ */
+public class PrivmsgBatch {
+
+    private final ConnectionHandler sender;
+    private final byte[] head;
+    private final byte[] tail;
+    private long[] seen;
+
+    /**
+     * constructs the batch of a message.
+     * @param sender the connection of the user sending the message
+     * @param message the message content
+     */
+    public PrivmsgBatch(ConnectionHandler sender, String message) {
+        Charset charset = Charset.defaultCharset();
+        this.sender = sender;
+        this.head = (":" + sender.getNickName() + " " + Configuration.PRIVMSG_STRING + " ").getBytes(charset);
+        this.tail = (" :" + message + System.lineSeparator()).getBytes(charset);
+        this.seen = new long[0];
+    }
+
+    /**
+     * sends the message to a channel or a user, a channel name starts with '#'.
+     * @param target the name of the channel or the nickname of the user
+     * @throws NoChannelExistsException cannot find the existing channel
+     * @throws NoUserExistsException cannot find the existing user
+     * @throws MessageLogFullException the message log has no room for the message and refuses it
+     */
+    public void sendTo(String target)
+            throws NoChannelExistsException, NoUserExistsException, MessageLogFullException {
+        if (target.charAt(0) == '#') {
+            sendToChannel(target);
+        } else {
+            sendToUser(target);
+        }
+    }
+
+    /**
+     * sends the message to the members of the channel who did not get it yet.
+     * @param targetChannelName the name of the channel
+     * @throws NoChannelExistsException cannot find the existing channel
+     * @throws MessageLogFullException the message log has no room for the message and refuses it
+     */
+    public void sendToChannel(String targetChannelName) throws NoChannelExistsException, MessageLogFullException {
+        Channel channel = sender.getChannels().get(targetChannelName);
+        if (channel == null) {
+            throw new NoChannelExistsException("No channel exists with that name");
+        }
+        List<ConnectionHandler> recipients = new ArrayList<ConnectionHandler>();
+        EncodedLine encodedLine = new EncodedLine(head, targetChannelName, tail, true);
+        if (!sender.getMessageLog().append(targetChannelName, encodedLine)) {
+            throw new MessageLogFullException("The message log is full, the message was not sent");
+        }
+        seen = channel.record(encodedLine, seen, recipients);
+        sender.getMetrics().recordFanOut(recipients.size());
+        for (ConnectionHandler recipient : recipients) {
+            recipient.send(encodedLine);
+        }
+        sender.getHistoryStore().trim();
+    }
+
+    /**
+     * sends the message to the user unless the user already got it.
+     * @param targetNickName the nickname of the user
+     * @throws NoUserExistsException cannot find the existing user
+     * @throws MessageLogFullException the message log has no room for the message and refuses it
+     */
+    public void sendToUser(String targetNickName) throws NoUserExistsException, MessageLogFullException {
+        ConnectionHandler recipient = sender.getRegisteredUsers().get(targetNickName);
+        if (recipient == null) {
+            throw new NoUserExistsException("No user exists with that name");
+        }
+        int id = recipient.getId();
+        if (id >= 0) {
+            int word = id >>> 6;
+            if (word >= seen.length) {
+                long[] grown = new long[Math.max(word + 1, seen.length * 2)];
+                System.arraycopy(seen, 0, grown, 0, seen.length);
+                seen = grown;
+            }
+            if ((seen[word] & (1L << id)) != 0) {
+                return;
+            }
+        }
+        EncodedLine encodedLine = new EncodedLine(head, targetNickName, tail, true);
+        if (!sender.getMessageLog().append(targetNickName, encodedLine)) {
+            throw new MessageLogFullException("The message log is full, the message was not sent");
+        }
+        if (id >= 0) {
+            seen[id >>> 6] |= 1L << id;
+        }
+        recipient.send(encodedLine);
+    }
+}
@@ -0,0 +1,173 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The state shared by every connection of the server.
+ */
+public class ServerContext {
+
+    private String serverName;
+    private ConcurrentHashMap<String, Channel> channels;
+    private ConcurrentSkipListMap<String, Channel> channelIndex;
+    private ConcurrentHashMap<String, ConnectionHandler> registeredUsers;
+    private UserTable userTable;
+    private CommandRegistry commandRegistry;
+    private ServerMetrics metrics;
+    private BufferPool readBufferPool;
+    private BufferPool writeBufferPool;
+    private HistoryStore historyStore;
+    private MessageLog messageLog;
+    private SessionStore sessionStore;
+    private TimerWheel timerWheel;
+    private FloodControl floodControl;
+    private AdmissionControl admissionControl;
+
+    /**
+     * constructs the state of a server with the default commands.
+     * @param serverName the name of server
+     */
+    public ServerContext(String serverName) {
+        this.serverName = serverName;
+        this.channels = new ConcurrentHashMap<String, Channel>();
+        this.channelIndex = new ConcurrentSkipListMap<String, Channel>();
+        this.registeredUsers = new ConcurrentHashMap<String, ConnectionHandler>();
+        this.userTable = new UserTable();
+        this.commandRegistry = CommandRegistry.createDefault();
+        this.metrics = new ServerMetrics(this);
+        this.readBufferPool = new BufferPool(Configuration.READ_BUFFER_SIZE, Configuration.READ_BUFFER_POOL_SIZE);
+        this.writeBufferPool = new BufferPool(Configuration.WRITE_BUFFER_SIZE, Configuration.WRITE_BUFFER_POOL_SIZE);
+        this.historyStore = new HistoryStore(Configuration.HISTORY_LINES, Configuration.HISTORY_CHANNEL_LINES,
+                Configuration.HISTORY_MAX_BYTES, Configuration.HISTORY_OFF_HEAP);
+        this.messageLog = new MessageLog(Configuration.MESSAGE_LOG_DIR, Configuration.MESSAGE_LOG_SEGMENT_BYTES,
+                Configuration.MESSAGE_LOG_FSYNC_MILLIS, Configuration.MESSAGE_LOG_MAX_PENDING_BYTES,
+                Configuration.MESSAGE_LOG_OVERFLOW_POLICY);
+        this.timerWheel = new TimerWheel(Configuration.TIMER_TICK_MILLIS, Configuration.TIMER_SLOTS);
+        this.sessionStore = new SessionStore(timerWheel, Configuration.SESSION_GRACE_MILLIS,
+                Configuration.SESSION_MISSED_LINES);
+        this.floodControl = new FloodControl(Configuration.FLOOD_RATE, Configuration.FLOOD_BURST,
+                Configuration.FLOOD_ADDRESS_RATE, Configuration.FLOOD_ADDRESS_BURST, Configuration.FLOOD_POLICY,
+                timerWheel);
+        this.admissionControl = new AdmissionControl(Configuration.MAX_CONNECTIONS,
+                Configuration.MAX_CONNECTIONS_PER_ADDRESS);
+    }
+
+    /**
+     * gets the server name.
+     * @return server name
+     */
+    public String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * gets all channels in the server.
+     * @return all channels in the server
+     */
+    public ConcurrentHashMap<String, Channel> getChannels() {
+        return channels;
+    }
+
+    /**
+     * gets all channels sorted by name, kept in step with the channels by the connections.
+     * @return all channels sorted by name
+     */
+    public ConcurrentSkipListMap<String, Channel> getChannelIndex() {
+        return channelIndex;
+    }
+
+    /**
+     * gets all registered users in the server.
+     * @return all registered users in the server
+     */
+    public ConcurrentHashMap<String, ConnectionHandler> getRegisteredUsers() {
+        return registeredUsers;
+    }
+
+    /**
+     * gets the table of the ids of the users in channels.
+     * @return the user table
+     */
+    public UserTable getUserTable() {
+        return userTable;
+    }
+
+    /**
+     * gets the commands of the server, new commands can be registered here.
+     * @return the command registry
+     */
+    public CommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+
+    /**
+     * gets the pool of read buffers shared by the connections.
+     * @return the read buffer pool
+     */
+    public BufferPool getReadBufferPool() {
+        return readBufferPool;
+    }
+
+    /**
+     * gets the pool of write buffers shared by the writer threads of the blocking transports.
+     * @return the write buffer pool
+     */
+    public BufferPool getWriteBufferPool() {
+        return writeBufferPool;
+    }
+
+    /**
+     * gets the recent lines of the channels.
+     * @return the history store
+     */
+    public HistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    /**
+     * gets the durable log of the delivered messages.
+     * @return the message log
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /**
+     * gets the parked sessions of the users whose connection dropped.
+     * @return the session store
+     */
+    public SessionStore getSessionStore() {
+        return sessionStore;
+    }
+
+    /**
+     * gets the timer wheel running the timers of the connections.
+     * @return the timer wheel
+     */
+    public TimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
+    /**
+     * gets the flood control with the token buckets of the addresses.
+     * @return the flood control
+     */
+    public FloodControl getFloodControl() {
+        return floodControl;
+    }
+
+    /**
+     * gets the admission control which counts the open connections against the caps.
+     * @return the admission control
+     */
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    /**
+     * gets the metrics of the server.
+     * @return the metrics
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+}
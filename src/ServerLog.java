@@ -0,0 +1,233 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The log of the server. The connection threads only put fixed-format events into a lock-free ring, one background
+ * thread formats and writes them, so a storm of connections never queues up on the lock of the standard output.
+ * An event which finds the ring full is dropped and counted, the writer reports the count once it catches up.
+ * The level and the format, plain text or JSON lines, are set by the irc.log.level and irc.log.format properties.
+ */
+public final class ServerLog {
+
+    /**
+     * The level of the events which trace single connections.
+     */
+    public static final int DEBUG = 0;
+    /**
+     * The level of the events of the normal operation.
+     */
+    public static final int INFO = 1;
+    /**
+     * The level of the events which a user or the network caused to fail.
+     */
+    public static final int WARN = 2;
+    /**
+     * The level of the events which the server cannot recover from.
+     */
+    public static final int ERROR = 3;
+
+    private static final String[] LEVEL_NAMES = {"DEBUG", "INFO", "WARN", "ERROR"};
+    private static final long IDLE_NANOS = 10_000_000L;
+
+    private static final int level = parseLevel(Configuration.LOG_LEVEL);
+    private static final boolean json = Configuration.LOG_FORMAT_JSON_STRING.equals(Configuration.LOG_FORMAT);
+    private static final LogRing ring = new LogRing(Configuration.LOG_BUFFER_EVENTS);
+    private static final Thread writer = startWriter();
+    private static volatile boolean stopping;
+
+    private ServerLog() {
+    }
+
+    /**
+     * checks whether events of the level are logged.
+     * @param eventLevel the level
+     * @return the result of check
+     */
+    public static boolean isEnabled(int eventLevel) {
+        return eventLevel >= level;
+    }
+
+    /**
+     * logs an event which traces a single connection.
+     * @param source the part of the server logging the event
+     * @param message the message
+     */
+    public static void debug(String source, String message) {
+        log(DEBUG, source, message, null);
+    }
+
+    /**
+     * logs an event which traces a single connection.
+     * @param source the part of the server logging the event
+     * @param message the message
+     * @param detail an immutable value appended to the message, it is only turned into text by the writer
+     */
+    public static void debug(String source, String message, Object detail) {
+        log(DEBUG, source, message, detail);
+    }
+
+    /**
+     * logs an event of the normal operation.
+     * @param source the part of the server logging the event
+     * @param message the message
+     */
+    public static void info(String source, String message) {
+        log(INFO, source, message, null);
+    }
+
+    /**
+     * logs an event of the normal operation.
+     * @param source the part of the server logging the event
+     * @param message the message
+     * @param detail an immutable value appended to the message, it is only turned into text by the writer
+     */
+    public static void info(String source, String message, Object detail) {
+        log(INFO, source, message, detail);
+    }
+
+    /**
+     * logs a failure caused by a user or the network.
+     * @param source the part of the server logging the event
+     * @param message the message
+     * @param detail an immutable value appended to the message, it is only turned into text by the writer
+     */
+    public static void warn(String source, String message, Object detail) {
+        log(WARN, source, message, detail);
+    }
+
+    /**
+     * logs a failure the server cannot recover from.
+     * @param source the part of the server logging the event
+     * @param message the message
+     * @param detail an immutable value appended to the message, it is only turned into text by the writer
+     */
+    public static void error(String source, String message, Object detail) {
+        log(ERROR, source, message, detail);
+    }
+
+    /**
+     * gets the number of events dropped because the writer fell behind.
+     * @return the number of events
+     */
+    public static long getDropped() {
+        return ring.getDropped();
+    }
+
+    private static void log(int eventLevel, String source, String message, Object detail) {
+        if (eventLevel >= level) {
+            ring.offer(eventLevel, System.currentTimeMillis(), source, message, detail);
+        }
+    }
+
+    private static int parseLevel(String name) {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return INFO;
+    }
+
+    private static Thread startWriter() {
+        Thread thread = new Thread(ServerLog::writeEvents, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopping = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        return thread;
+    }
+
+    private static void writeEvents() {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), 16 * 1024);
+        StringBuilder builder = new StringBuilder(256);
+        LogRing.Consumer format = (eventLevel, time, source, message, detail) -> {
+            builder.setLength(0);
+            if (json) {
+                formatJson(builder, eventLevel, time, source, message, detail);
+            } else {
+                formatText(builder, eventLevel, time, source, message, detail);
+            }
+            builder.append(System.lineSeparator());
+            try {
+                out.append(builder);
+            } catch (IOException ignored) {
+                // nowhere left to report it
+            }
+        };
+        long reportedDrops = 0;
+        while (true) {
+            boolean wrote = false;
+            while (ring.poll(format)) {
+                wrote = true;
+            }
+            long drops = ring.getDropped();
+            if (drops != reportedDrops) {
+                format.accept(WARN, System.currentTimeMillis(), "ServerLog", "events dropped",
+                        drops - reportedDrops);
+                reportedDrops = drops;
+                wrote = true;
+            }
+            if (wrote) {
+                try {
+                    out.flush();
+                } catch (IOException ignored) {
+                    // nowhere left to report it
+                }
+            } else if (stopping) {
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private static void formatText(StringBuilder builder, int eventLevel, long time, String source, String message,
+                                   Object detail) {
+        builder.append(Instant.ofEpochMilli(time)).append(' ').append(LEVEL_NAMES[eventLevel]).append(' ')
+                .append(source).append(": ").append(message);
+        if (detail != null) {
+            builder.append(' ').append(detail);
+        }
+    }
+
+    private static void formatJson(StringBuilder builder, int eventLevel, long time, String source, String message,
+                                   Object detail) {
+        builder.append("{\"time\":\"").append(Instant.ofEpochMilli(time)).append("\",\"level\":\"")
+                .append(LEVEL_NAMES[eventLevel]).append("\",\"source\":");
+        appendJsonString(builder, source);
+        builder.append(",\"message\":");
+        appendJsonString(builder, message);
+        if (detail != null) {
+            builder.append(",\"detail\":");
+            appendJsonString(builder, String.valueOf(detail));
+        }
+        builder.append('}');
+    }
+
+    private static void appendJsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,269 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of the server. The counters are striped, so the connections record into them without contending,
+ * and recording never allocates. The sizes of the users and channels are read from the shared maps when asked for.
+ * The per-command statistics live in the command registry.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private final ServerContext context;
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder closedConnections = new LongAdder();
+    private final LongAdder refusedConnections = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder unknownCommands = new LongAdder();
+    private final LongAdder throttledLines = new LongAdder();
+    private final LongAdder throttledConnections = new LongAdder();
+    private final LongAdder floodDisconnects = new LongAdder();
+    private final Histogram fanOut = new Histogram();
+
+    /**
+     * constructs the metrics of a server.
+     * @param context the state of the server
+     */
+    public ServerMetrics(ServerContext context) {
+        this.context = context;
+    }
+
+    /**
+     * registers the metrics in the platform MBean server.
+     * @throws JMException the metrics are already registered
+     */
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("ChatServer:type=Metrics"));
+    }
+
+    /**
+     * records a new connection.
+     */
+    public void connectionOpened() {
+        acceptedConnections.increment();
+    }
+
+    /**
+     * records a closed connection.
+     */
+    public void connectionClosed() {
+        closedConnections.increment();
+    }
+
+    /**
+     * records a connection refused by the admission control.
+     */
+    public void recordRefusedConnection() {
+        refusedConnections.increment();
+    }
+
+    /**
+     * records bytes read from a user.
+     * @param count the number of bytes
+     */
+    public void recordBytesIn(long count) {
+        bytesIn.add(count);
+    }
+
+    /**
+     * records one socket write to a user.
+     * @param count the number of bytes written
+     */
+    public void recordBytesOut(long count) {
+        bytesOut.add(count);
+        writes.increment();
+    }
+
+    /**
+     * records a line which is not a known command.
+     */
+    public void recordUnknownCommand() {
+        unknownCommands.increment();
+    }
+
+    /**
+     * records a line which took more tokens than the flood control had left, so reading stopped for a while.
+     * @param firstTime whether it is the first such line of the connection
+     */
+    public void recordThrottledLine(boolean firstTime) {
+        throttledLines.increment();
+        if (firstTime) {
+            throttledConnections.increment();
+        }
+    }
+
+    /**
+     * records a connection closed by the flood control.
+     */
+    public void recordFloodDisconnect() {
+        floodDisconnects.increment();
+    }
+
+    /**
+     * records the number of users one line was queued for.
+     * @param recipients the number of users
+     */
+    public void recordFanOut(int recipients) {
+        fanOut.record(recipients);
+    }
+
+    public long getActiveConnections() {
+        return acceptedConnections.sum() - closedConnections.sum();
+    }
+
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    public long getRefusedConnections() {
+        return refusedConnections.sum();
+    }
+
+    public int getRegisteredUsers() {
+        return context.getRegisteredUsers().size();
+    }
+
+    public int getChannelCount() {
+        return context.getChannels().size();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    public long getUnknownCommands() {
+        return unknownCommands.sum();
+    }
+
+    public long getThrottledLines() {
+        return throttledLines.sum();
+    }
+
+    public long getThrottledConnections() {
+        return throttledConnections.sum();
+    }
+
+    public long getFloodDisconnects() {
+        return floodDisconnects.sum();
+    }
+
+    public int getFloodAddresses() {
+        return context.getFloodControl().getAddressCount();
+    }
+
+    public long getDroppedLogEvents() {
+        return ServerLog.getDropped();
+    }
+
+    public long getHistoryBytes() {
+        return context.getHistoryStore().getAllocatedBytes();
+    }
+
+    public long getLoggedMessages() {
+        return context.getMessageLog().getRecords();
+    }
+
+    public long getLostLoggedMessages() {
+        return context.getMessageLog().getLostRecords();
+    }
+
+    public long getOverflowLoggedMessages() {
+        return context.getMessageLog().getOverflowRecords();
+    }
+
+    public int getParkedSessions() {
+        return context.getSessionStore().size();
+    }
+    public Map<String, Long> getBackpressureFirings() {
+        Map<String, Long> firings = new LinkedHashMap<String, Long>();
+        for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+            firings.put(policy.toString(), policy.getFiredCount());
+        }
+        return firings;
+    }
+
+    public long getBackpressureDroppedLines() {
+        long dropped = 0;
+        for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+            dropped += policy.getDroppedLines();
+        }
+        return dropped;
+    }
+
+
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (CommandStats stats : context.getCommandRegistry().getStats()) {
+            counts.put(stats.getName(), stats.getCount());
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getCommandErrors() {
+        Map<String, Long> errors = new LinkedHashMap<String, Long>();
+        for (CommandStats stats : context.getCommandRegistry().getStats()) {
+            errors.put(stats.getName(), stats.getErrors());
+        }
+        return errors;
+    }
+
+    public Map<String, Long> getCommandLatencyP99Micros() {
+        Map<String, Long> latencies = new LinkedHashMap<String, Long>();
+        for (CommandStats stats : context.getCommandRegistry().getStats()) {
+            latencies.put(stats.getName(), stats.getLatency().getPercentile(99) / 1000);
+        }
+        return latencies;
+    }
+
+    public long getFanOutP99() {
+        return fanOut.getPercentile(99);
+    }
+
+    public long getFanOutMax() {
+        return fanOut.getMax();
+    }
+
+    public List<String> getReport() {
+        List<String> report = new ArrayList<String>();
+        report.add("connections active=" + getActiveConnections() + " accepted=" + getAcceptedConnections()
+                + " refused=" + getRefusedConnections());
+        report.add("users registered=" + getRegisteredUsers() + " parked=" + getParkedSessions() + " channels="
+                + getChannelCount());
+        report.add("bytes in=" + getBytesIn() + " out=" + getBytesOut() + " writes=" + getWrites());
+        report.add("flood throttled lines=" + getThrottledLines() + " connections=" + getThrottledConnections()
+                + " disconnects=" + getFloodDisconnects() + " addresses=" + getFloodAddresses());
+        StringBuilder backpressure = new StringBuilder("backpressure");
+        for (Map.Entry<String, Long> firings : getBackpressureFirings().entrySet()) {
+            backpressure.append(' ').append(firings.getKey()).append('=').append(firings.getValue());
+        }
+        report.add(backpressure.append(" dropped=").append(getBackpressureDroppedLines()).toString());
+        report.add("history bytes=" + getHistoryBytes() + " log dropped=" + getDroppedLogEvents());
+        report.add("messagelog written=" + getLoggedMessages() + " lost=" + getLostLoggedMessages()
+                + " overflow=" + getOverflowLoggedMessages());
+        report.add("fanout count=" + fanOut.getCount() + " mean=" + fanOut.getMean() + " p50="
+                + fanOut.getPercentile(50) + " p99=" + fanOut.getPercentile(99) + " max=" + fanOut.getMax());
+        for (CommandStats stats : context.getCommandRegistry().getStats()) {
+            Histogram latency = stats.getLatency();
+            report.add("command " + stats.getName() + " count=" + stats.getCount() + " errors=" + stats.getErrors()
+                    + " p50us=" + latency.getPercentile(50) / 1000 + " p99us=" + latency.getPercentile(99) / 1000
+                    + " maxus=" + latency.getMax() / 1000);
+        }
+        report.add("command unknown count=" + getUnknownCommands());
+        return report;
+    }
+}
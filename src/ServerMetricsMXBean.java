@@ -0,0 +1,171 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The management interface of the server metrics, registered in the platform MBean server as
+ * "ChatServer:type=Metrics" and readable with jconsole or any other JMX client.
+ */
+public interface ServerMetricsMXBean {
+
+    /**
+     * gets the number of open connections.
+     * @return the number of connections
+     */
+    long getActiveConnections();
+
+    /**
+     * gets the number of connections accepted since the start.
+     * @return the number of connections
+     */
+    long getAcceptedConnections();
+
+    /**
+     * gets the number of connections refused by the admission control.
+     * @return the number of connections
+     */
+    long getRefusedConnections();
+
+    /**
+     * gets the number of users with a nickname.
+     * @return the number of users
+     */
+    int getRegisteredUsers();
+
+    /**
+     * gets the number of channels.
+     * @return the number of channels
+     */
+    int getChannelCount();
+
+    /**
+     * gets the number of bytes read from users.
+     * @return the number of bytes
+     */
+    long getBytesIn();
+
+    /**
+     * gets the number of bytes written to users.
+     * @return the number of bytes
+     */
+    long getBytesOut();
+
+    /**
+     * gets the number of socket writes to users.
+     * @return the number of writes
+     */
+    long getWrites();
+
+    /**
+     * gets the number of lines which were not a known command.
+     * @return the number of lines
+     */
+    long getUnknownCommands();
+
+    /**
+     * gets the number of lines which took more tokens than the flood control had left.
+     * @return the number of lines
+     */
+    long getThrottledLines();
+
+    /**
+     * gets the number of connections which had a line throttled.
+     * @return the number of connections
+     */
+    long getThrottledConnections();
+
+    /**
+     * gets the number of connections closed by the flood control.
+     * @return the number of connections
+     */
+    long getFloodDisconnects();
+
+    /**
+     * gets the number of addresses the flood control keeps a bucket for.
+     * @return the number of addresses
+     */
+    int getFloodAddresses();
+
+    /**
+     * gets the number of log events dropped because the log writer fell behind.
+     * @return the number of events
+     */
+    long getDroppedLogEvents();
+
+    /**
+     * gets the memory the channel histories take.
+     * @return the number of bytes
+     */
+    long getHistoryBytes();
+
+    /**
+     * gets the number of messages written to the durable message log.
+     * @return the number of messages
+     */
+    long getLoggedMessages();
+
+    /**
+     * gets the number of messages the durable message log lost to disk errors.
+     * @return the number of messages
+     */
+    long getLostLoggedMessages();
+
+    /**
+     * gets the number of messages the durable message log had no room for, and dropped or refused.
+     * @return the number of messages
+     */
+    long getOverflowLoggedMessages();
+
+    /**
+     * gets the number of sessions of dropped users waiting to be resumed.
+     * @return the number of sessions
+     */
+    int getParkedSessions();
+
+    /**
+     * gets how many times every backpressure policy dropped lines or disconnected a slow user.
+     * @return the firings by policy name
+     */
+    Map<String, Long> getBackpressureFirings();
+
+    /**
+     * gets the number of lines dropped for slow users by the backpressure policies.
+     * @return the number of lines
+     */
+    long getBackpressureDroppedLines();
+
+    /**
+     * gets the number of runs of every command.
+     * @return the runs by command name
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * gets the number of error replies of every command.
+     * @return the errors by command name
+     */
+    Map<String, Long> getCommandErrors();
+
+    /**
+     * gets the 99th percentile of the handling time of every command in microseconds.
+     * @return the latency by command name
+     */
+    Map<String, Long> getCommandLatencyP99Micros();
+
+    /**
+     * gets the 99th percentile of the number of users a line was queued for.
+     * @return the fan-out size
+     */
+    long getFanOutP99();
+
+    /**
+     * gets the largest number of users a line was queued for.
+     * @return the fan-out size
+     */
+    long getFanOutMax();
+
+    /**
+     * gets the text report also sent by the STATS command.
+     * @return the lines of the report
+     */
+    List<String> getReport();
+}
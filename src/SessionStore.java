@@ -0,0 +1,89 @@
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The parked sessions of the users whose connection dropped, by resume token.
+ * A session is taken out of the store exactly once, either by the user resuming it or by its expiry, which then
+ * runs the QUIT of the user. Resuming is off if the grace period is 0.
+ */
+public class SessionStore {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ConcurrentHashMap<String, ParkedSession> parked = new ConcurrentHashMap<String, ParkedSession>();
+    private final long graceMillis;
+    private final int missedLines;
+    private final SecureRandom random = new SecureRandom();
+    private final TimerWheel timerWheel;
+
+    /**
+     * constructs an empty store.
+     * @param timerWheel the timer wheel the sessions expire on
+     * @param graceMillis the time in milliseconds a session is kept, 0 turns resuming off
+     * @param missedLines the number of missed lines kept for a session
+     */
+    public SessionStore(TimerWheel timerWheel, long graceMillis, int missedLines) {
+        this.timerWheel = timerWheel;
+        this.graceMillis = graceMillis;
+        this.missedLines = missedLines;
+    }
+
+    /**
+     * checks whether the users can resume their sessions.
+     * @return the result of check
+     */
+    public boolean isEnabled() {
+        return graceMillis > 0;
+    }
+
+    /**
+     * creates a new resume token, 128 random bits as hex digits.
+     * @return the token
+     */
+    public String newToken() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        char[] token = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            token[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            token[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(token);
+    }
+
+    /**
+     * parks the session of a connection until it is resumed or the grace period is over.
+     * @param handler the connection of the user
+     * @param token the resume token of the user
+     * @return the parked session
+     */
+    public ParkedSession park(ConnectionHandler handler, String token) {
+        ParkedSession session = new ParkedSession(handler, missedLines);
+        handler.setParkedSession(session);
+        parked.put(token, session);
+        timerWheel.schedule(() -> {
+            if (parked.remove(token, session)) {
+                ServerLog.info("SessionStore", "session expired", handler.getNickName());
+                handler.quit();
+            }
+        }, graceMillis);
+        return session;
+    }
+
+    /**
+     * takes the parked session of a token.
+     * @param token the resume token
+     * @return the session, or null if there is no session parked with the token
+     */
+    public ParkedSession resume(String token) {
+        return parked.remove(token);
+    }
+
+    /**
+     * gets the number of parked sessions.
+     * @return the number of sessions
+     */
+    public int size() {
+        return parked.size();
+    }
+}
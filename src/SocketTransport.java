@@ -0,0 +1,176 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The blocking transport, which reads the user's lines on its own platform or virtual thread.
+ * The lines to the user are queued and written by a second thread, so senders never wait for this user's socket.
+ */
+public class SocketTransport implements Runnable, ClientTransport {
+
+    private Socket conn;
+    private ThreadFactory threadFactory;
+    private ConnectionHandler connectionHandler;
+    private OutboundQueue outboundQueue;
+    private ServerMetrics metrics;
+    private BufferPool readBufferPool;
+    private BufferPool writeBufferPool;
+    private TimerWheel timerWheel;
+    private LineDecoder lineDecoder;
+
+    private InputStream is;
+    private OutputStream os;
+    private volatile boolean closed;
+
+    /**
+     * constructs a blocking transport over the socket.
+     * @param context the state shared by every connection of the server
+     * @param conn the socket used to communicate with server
+     * @param threadFactory the factory of the reader and writer threads
+     */
+    public SocketTransport(ServerContext context, Socket conn, ThreadFactory threadFactory) {
+        this.conn = conn;
+        this.threadFactory = threadFactory;
+        this.connectionHandler = new ConnectionHandler(context, this, conn.getInetAddress());
+        this.outboundQueue = connectionHandler.getOutboundQueue();
+        this.metrics = context.getMetrics();
+        this.readBufferPool = context.getReadBufferPool();
+        this.writeBufferPool = context.getWriteBufferPool();
+        this.timerWheel = context.getTimerWheel();
+        this.lineDecoder = new LineDecoder(connectionHandler);
+
+        try {
+            is = conn.getInputStream();
+            os = conn.getOutputStream();
+        } catch (IOException ioe) {
+            ServerLog.warn("SocketTransport", "cannot open the streams", ioe.getMessage());
+            closeNow();
+        }
+    }
+
+    /**
+     * starts the reader and the writer threads.
+     */
+    public void start() {
+        threadFactory.newThread(this).start();
+        threadFactory.newThread(this::writeLines).start();
+    }
+
+    /**
+     * reads the user's lines until the connection is closed.
+     * The thread waits for the first byte without a buffer, then borrows one from the pool for the bytes which have
+     * arrived with it, so an idle connection holds no read buffer. A user over its flood limit is not read from until
+     * it is back within it.
+     */
+    public void run() {
+        ServerLog.debug("SocketTransport", "new ConnectionHandler thread started");
+        try {
+            int first;
+            while ((first = is.read()) >= 0) {
+                ByteBuffer readBuffer = readBufferPool.acquire();
+                try {
+                    byte[] bytes = readBuffer.array();
+                    bytes[0] = (byte) first;
+                    int count = 1;
+                    int available = Math.min(is.available(), bytes.length - 1);
+                    if (available > 0) {
+                        count += Math.max(0, is.read(bytes, 1, available));
+                    }
+                    metrics.recordBytesIn(count);
+                    lineDecoder.decode(bytes, 0, count);
+                } finally {
+                    readBufferPool.release(readBuffer);
+                }
+                long delay;
+                while ((delay = connectionHandler.takeReadDelayMillis()) > 0) {
+                    Thread.sleep(delay);
+                    lineDecoder.decodeHeld();
+                }
+            }
+        } catch (Exception e) {
+            ServerLog.info("SocketTransport", "connection ended", e.getMessage());
+        }
+        close();
+    }
+
+    /**
+     * writes the queued lines until the connection is closed.
+     * The thread waits for a line without a buffer, then borrows one from the pool for one write, so an idle
+     * connection holds no write buffer either.
+     */
+    private void writeLines() {
+        try {
+            while (outboundQueue.await()) {
+                ByteBuffer buffer = writeBufferPool.acquire();
+                int count;
+                try {
+                    count = outboundQueue.fill(buffer);
+                    os.write(buffer.array(), 0, count);
+                    os.flush();
+                } finally {
+                    writeBufferPool.release(buffer);
+                }
+                boolean drained = outboundQueue.consume(count);
+                metrics.recordBytesOut(count);
+                if (drained) {
+                    connectionHandler.outboundDrained();
+                }
+            }
+        } catch (IOException ioe) {
+            ServerLog.warn("SocketTransport", "write failed", ioe.getMessage());
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        closeNow();
+    }
+
+    /**
+     * does nothing, the writer thread wakes up by itself when a line is queued.
+     */
+    public void requestWrite() {
+    }
+
+    /**
+     * closes the connection once the writer has written the queued lines.
+     */
+    public void close() {
+        if (!closed) {
+            ServerLog.info("ConnectionHandler", "cleaning up and exiting", connectionHandler.getNickName());
+        }
+        closed = true;
+        outboundQueue.close();
+        connectionHandler.connectionClosed();
+    }
+
+    /**
+     * closes the connection without waiting for the queued lines. The writer still gets a short time to write the
+     * last line left by closeWith, then the socket is closed even if the writer is stuck on a user who does not read.
+     */
+    public void abort() {
+        closed = true;
+        outboundQueue.close();
+        connectionHandler.connectionClosed();
+        timerWheel.schedule(this::closeSocket, Configuration.CLOSE_DRAIN_MILLIS);
+    }
+
+    /**
+     * closes the socket at once, which also wakes up a reader blocked on it.
+     */
+    private void closeNow() {
+        closed = true;
+        outboundQueue.close();
+        connectionHandler.connectionClosed();
+        closeSocket();
+    }
+
+    private void closeSocket() {
+        try {
+            conn.close();
+        } catch (IOException ioe) {
+            ServerLog.warn("SocketTransport", "close failed", ioe.getMessage());
+        }
+    }
+}
\ No newline at end of file
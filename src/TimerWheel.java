@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The hashed timing wheel which runs the timers of every connection on one thread.
+ * A timer lands in the slot of its deadline tick, with the number of turns of the wheel still to wait, so adding
+ * and firing a timer costs the same however many timers are waiting. Timers are added through a lock-free queue
+ * and moved into their slot by the wheel thread, and a cancelled timer is only dropped when its slot comes round.
+ * The tasks run on the wheel thread, one after the other, so they must be short and must not block.
+ */
+public class TimerWheel {
+
+    private final long tickMillis;
+    private final List<Timeout>[] slots;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile long startTime;
+    private long tick;
+
+    /**
+     * constructs a wheel, its thread starts with the first timer.
+     * @param tickMillis the time in milliseconds between two ticks, the precision of the timers
+     * @param slotCount the number of slots, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int slotCount) {
+        int size = Integer.highestOneBit(Math.max(2, slotCount - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.slots = (List<Timeout>[]) new List<?>[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayList<Timeout>();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * runs a task on the wheel thread after a delay.
+     * @param task the task
+     * @param delayMillis the delay in milliseconds, 0 runs the task at the next tick
+     * @return the timer, which can be cancelled
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        if (started.compareAndSet(false, true)) {
+            startTime = System.currentTimeMillis();
+            Thread thread = new Thread(this::run, "timer-wheel");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Timeout timeout = new Timeout(task, System.currentTimeMillis() + Math.max(0, delayMillis));
+        added.offer(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            long deadline = startTime + (tick + 1) * tickMillis;
+            long sleep = deadline - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException interruptedException) {
+                    return;
+                }
+            }
+            transferAdded();
+            expire(slots[(int) tick & mask]);
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long deadlineTick = Math.max(tick, (timeout.deadline - startTime + tickMillis - 1) / tickMillis - 1);
+            timeout.rounds = (deadlineTick - tick) / slots.length;
+            slots[(int) deadlineTick & mask].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> slot) {
+        int kept = 0;
+        int size = slot.size();
+        List<Timeout> due = null;
+        for (int i = 0; i < size; i++) {
+            Timeout timeout = slot.get(i);
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                slot.set(kept++, timeout);
+                continue;
+            }
+            if (due == null) {
+                due = new ArrayList<Timeout>();
+            }
+            due.add(timeout);
+        }
+        slot.subList(kept, size).clear();
+        if (due == null) {
+            return;
+        }
+        for (Timeout timeout : due) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException runtimeException) {
+                ServerLog.error("TimerWheel", "timer task failed", runtimeException);
+            }
+        }
+    }
+
+    /**
+     * A timer waiting in the wheel.
+     */
+    public static final class Timeout {
+
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * cancels the timer, its task will not run unless it is running already.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
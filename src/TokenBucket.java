@@ -0,0 +1,69 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The token bucket which limits the rate of the lines of a user, or of all users from one address.
+ * The bucket is kept as the one time at which it will be full again, so taking tokens is a single compare and set
+ * and a bucket shared by many connections never locks. Tokens are taken by moving that time forward by their refill
+ * time, and the bucket is empty when the time lies more than a whole burst ahead.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * constructs a full bucket.
+     * @param tokensPerSecond the rate the tokens come back at
+     * @param burst the number of tokens the bucket holds
+     */
+    public TokenBucket(long tokensPerSecond, int burst) {
+        this.nanosPerToken = 1000000000L / tokensPerSecond;
+        this.burstNanos = burst * nanosPerToken;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * takes the tokens if the bucket holds them.
+     * @param tokens the number of tokens
+     * @param now the time from System.nanoTime
+     * @return false if the bucket holds too few tokens, then none are taken
+     */
+    public boolean tryTake(int tokens, long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + tokens * nanosPerToken;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * takes the tokens even if the bucket holds too few, the missing tokens are owed.
+     * @param tokens the number of tokens
+     * @param now the time from System.nanoTime
+     * @return the time in nanoseconds until the owed tokens are paid back, 0 if none are owed
+     */
+    public long take(int tokens, long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + tokens * nanosPerToken;
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(0, next - now - burstNanos);
+            }
+        }
+    }
+
+    /**
+     * gets the time until the bucket is full again.
+     * @param now the time from System.nanoTime
+     * @return the time in nanoseconds, 0 if the bucket is full
+     */
+    public long getRefillNanos(long now) {
+        return Math.max(0, fullAt.get() - now);
+    }
+}
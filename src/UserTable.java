@@ -0,0 +1,75 @@
+/**
+ * The table of dense user ids. A connection takes an id when it joins its first channel and gives it back when it
+ * leaves its last one, so the channels can keep their members as small ints and the ids stay close to the number
+ * of users in channels. The connection of an id is one array read away.
+ */
+public class UserTable {
+
+    private volatile ConnectionHandler[] users = new ConnectionHandler[64];
+    private int[] freeIds = new int[64];
+    private int freeCount;
+    private int nextId;
+
+    /**
+     * takes an id for the connection, the lowest given back id is not guaranteed to be reused first.
+     * @param user the connection
+     * @return the id
+     */
+    public synchronized int acquire(ConnectionHandler user) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = nextId++;
+            if (id == users.length) {
+                ConnectionHandler[] grown = new ConnectionHandler[users.length * 2];
+                System.arraycopy(users, 0, grown, 0, users.length);
+                users = grown;
+            }
+        }
+        users[id] = user;
+        return id;
+    }
+
+    /**
+     * gives an id back, it must no longer be in any channel.
+     * @param id the id
+     */
+    public synchronized void release(int id) {
+        users[id] = null;
+        if (freeCount == freeIds.length) {
+            int[] grown = new int[freeIds.length * 2];
+            System.arraycopy(freeIds, 0, grown, 0, freeCount);
+            freeIds = grown;
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * hands an id over to another connection, the user resuming the session of the id.
+     * @param id the id
+     * @param user the new connection
+     */
+    public synchronized void replace(int id, ConnectionHandler user) {
+        users[id] = user;
+    }
+
+    /**
+     * gets the connection of an id.
+     * The id must have been read from a channel, whose lock orders it after the connection was stored here.
+     * @param id the id
+     * @return the connection, or null if the id is free
+     */
+    public ConnectionHandler get(int id) {
+        ConnectionHandler[] current = users;
+        return id < current.length ? current[id] : null;
+    }
+
+    /**
+     * gets the number of ids handed out so far, every id is below it.
+     * @return the bound of the ids
+     */
+    public synchronized int getIdBound() {
+        return nextId;
+    }
+}
@@ -0,0 +1,14 @@
+package exception;
+
+/**
+ * The invalid list arguments exception throws when a user count filter of LIST is not a number.
+ */
+public class InvalidListArgumentsException extends Exception {
+    /**
+     * constructs an invalid list arguments exception.
+     * @param message the reply message
+     */
+    public InvalidListArgumentsException(String message) {
+        super(message);
+    }
+}
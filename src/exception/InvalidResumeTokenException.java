@@ -0,0 +1,14 @@
+package exception;
+
+/**
+ * The invalid resume token exception throws when user resumes with a token of no parked session.
+ */
+public class InvalidResumeTokenException extends Exception {
+    /**
+     * constructs an invalid resume token exception.
+     * @param message the reply message
+     */
+    public InvalidResumeTokenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package exception;
+
+/**
+ * The message log full exception throws when the message log has no room for a message and refuses it.
+ */
+public class MessageLogFullException extends Exception {
+    /**
+     * constructs a message log full exception.
+     * @param message the reply message
+     */
+    public MessageLogFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package exception;
+
+/**
+ * The nickname in use exception throws when user enter a nickname another user already has.
+ */
+public class NickNameInUseException extends Exception {
+    /**
+     * constructs a nickname in use exception.
+     * @param message the reply message
+     */
+    public NickNameInUseException(String message) {
+        super(message);
+    }
+}
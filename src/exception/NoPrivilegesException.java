@@ -0,0 +1,14 @@
+package exception;
+
+/**
+ * The no privileges exception throws when user asks for an operator command without being the operator.
+ */
+public class NoPrivilegesException extends Exception {
+    /**
+     * constructs a no privileges exception.
+     * @param message the reply message
+     */
+    public NoPrivilegesException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package exception;
+
+/**
+ * The password mismatch exception throws when user enters a wrong operator name or password.
+ */
+public class PasswordMismatchException extends Exception {
+    /**
+     * constructs a password mismatch exception.
+     * @param message the reply message
+     */
+    public PasswordMismatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,291 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The stress check of Channel, IdSet and UserTable. Worker threads join and part their own users in and out of
+ * channels shared by all workers and of channels of their own, so channels are created and removed, ids are taken and
+ * given back and the id sets switch between the array and the bitset. Reader threads iterate the members, the NAMES
+ * chunks and the collected members of every channel at the same time.
+ *
+ * Every shared channel also holds one resident user who joined before the workers started and never leaves. The
+ * check fails if anything throws, if a snapshot holds a null or the same user twice or misses a resident, or if the
+ * channels, the ids and the table do not match the joins and parts of the workers once they stopped.
+ * Members collected from several channels into one bitset are only unique by id: a worker user who left its last
+ * channel and joined again in between has a new id and may be collected twice, a resident never.
+ *
+ * Usage, from the project directory:
+ *   gradle channelStressCheck
+ * or, with other arguments:
+ *   javac -d out $(find src test -name '*.java')
+ *   java -cp out ChannelStressCheck [threads] [seconds]
+ */
+public class ChannelStressCheck {
+
+    private static final int SHARED_CHANNELS = 8;
+    private static final int OWN_CHANNELS = 4;
+    private static final int USERS_PER_THREAD = 50;
+    private static final int READERS = 2;
+
+    private final ServerContext context = new ServerContext("check");
+    private final int threads;
+    private final String[] channelNames;
+    private final ConnectionHandler[] residents;
+    private final ConnectionHandler[][] users;
+    private final boolean[][][] joined;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private volatile boolean running = true;
+
+    private ChannelStressCheck(int threads) throws Exception {
+        this.threads = threads;
+        channelNames = new String[SHARED_CHANNELS + threads * OWN_CHANNELS];
+        residents = new ConnectionHandler[SHARED_CHANNELS];
+        for (int i = 0; i < SHARED_CHANNELS; i++) {
+            channelNames[i] = "#shared" + i;
+            residents[i] = newUser("r" + i);
+            residents[i].joinChannel(channelNames[i]);
+        }
+        for (int i = SHARED_CHANNELS; i < channelNames.length; i++) {
+            channelNames[i] = "#own" + i;
+        }
+        users = new ConnectionHandler[threads][USERS_PER_THREAD];
+        joined = new boolean[threads][USERS_PER_THREAD][channelNames.length];
+        for (int t = 0; t < threads; t++) {
+            for (int u = 0; u < USERS_PER_THREAD; u++) {
+                users[t][u] = newUser("w" + t + "u" + u);
+            }
+        }
+    }
+
+    /**
+     * runs the check.
+     * @param args the number of worker threads and the running time in seconds
+     * @throws Exception if the check fails
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        new ChannelStressCheck(threads).run(seconds * 1000L);
+    }
+
+    private void run(long millis) throws Exception {
+        List<Thread> started = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            started.add(new Thread(() -> guard(() -> work(thread)), "worker-" + t));
+        }
+        for (int r = 0; r < READERS; r++) {
+            started.add(new Thread(() -> guard(this::read), "reader-" + r));
+        }
+        for (Thread thread : started) {
+            thread.start();
+        }
+        long deadline = System.currentTimeMillis() + millis;
+        while (failure.get() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        running = false;
+        for (Thread thread : started) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("the stress run failed", failure.get());
+        }
+        verify();
+        System.out.println(operations.get() + " joins and parts, " + snapshots.get() + " snapshots, no failure");
+    }
+
+    private void work(int thread) throws Exception {
+        Random random = new Random(thread);
+        while (running) {
+            int u = random.nextInt(USERS_PER_THREAD);
+            ConnectionHandler user = users[thread][u];
+            if (random.nextInt(100) == 0) {
+                user.partAllChannels();
+                joined[thread][u] = new boolean[channelNames.length];
+            } else {
+                int c = random.nextInt(2) == 0 ? random.nextInt(SHARED_CHANNELS)
+                        : SHARED_CHANNELS + thread * OWN_CHANNELS + random.nextInt(OWN_CHANNELS);
+                if (joined[thread][u][c]) {
+                    user.partChannel(channelNames[c]);
+                } else {
+                    user.joinChannel(channelNames[c]);
+                }
+                joined[thread][u][c] = !joined[thread][u][c];
+            }
+            operations.incrementAndGet();
+        }
+    }
+
+    private void read() {
+        Map<String, Channel> channels = context.getChannels();
+        while (running) {
+            long[] seen = new long[1];
+            List<ConnectionHandler> collected = new ArrayList<ConnectionHandler>();
+            for (int c = 0; c < channelNames.length; c++) {
+                Channel channel = channels.get(channelNames[c]);
+                if (channel == null) {
+                    check(c >= SHARED_CHANNELS, channelNames[c] + " with its resident is gone");
+                    continue;
+                }
+                Set<ConnectionHandler> members = checkSnapshot(channel.getMembers(), channel.getName());
+                Set<String> names = new HashSet<String>();
+                for (String chunk : channel.getNames(400)) {
+                    for (String name : chunk.split(" ")) {
+                        check(names.add(name), name + " twice in the names of " + channel.getName());
+                    }
+                }
+                if (c < SHARED_CHANNELS) {
+                    check(members.contains(residents[c]), "resident missing in the members of " + channelNames[c]);
+                    check(names.contains(residents[c].getNickName()),
+                            "resident missing in the names of " + channelNames[c]);
+                }
+                List<ConnectionHandler> own = new ArrayList<ConnectionHandler>();
+                channel.collectNewMembers(new long[1], own);
+                checkSnapshot(own.toArray(new ConnectionHandler[0]), "the collected members of " + channel.getName());
+                seen = channel.collectNewMembers(seen, collected);
+                snapshots.incrementAndGet();
+            }
+            Set<ConnectionHandler> once = new HashSet<ConnectionHandler>();
+            for (ConnectionHandler member : collected) {
+                check(member != null, "null in the collected members");
+                check(once.add(member) || member.getNickName().startsWith("w"),
+                        member.getNickName() + " twice in the collected members");
+            }
+        }
+    }
+
+    private Set<ConnectionHandler> checkSnapshot(ConnectionHandler[] snapshot, String what) {
+        Set<ConnectionHandler> members = new HashSet<ConnectionHandler>();
+        for (ConnectionHandler member : snapshot) {
+            check(member != null, "null in " + what);
+            check(members.add(member), member.getNickName() + " twice in " + what);
+        }
+        return members;
+    }
+
+    private void verify() {
+        Map<String, Channel> channels = context.getChannels();
+        UserTable userTable = context.getUserTable();
+        Set<Integer> ids = new HashSet<Integer>();
+        for (int c = 0; c < channelNames.length; c++) {
+            Set<ConnectionHandler> expected = new HashSet<ConnectionHandler>();
+            if (c < SHARED_CHANNELS) {
+                expected.add(residents[c]);
+            }
+            for (int t = 0; t < threads; t++) {
+                for (int u = 0; u < USERS_PER_THREAD; u++) {
+                    if (joined[t][u][c]) {
+                        expected.add(users[t][u]);
+                    }
+                }
+            }
+            Channel channel = channels.get(channelNames[c]);
+            if (expected.isEmpty()) {
+                check(channel == null, channelNames[c] + " is left without members");
+                check(!context.getChannelIndex().containsKey(channelNames[c]),
+                        channelNames[c] + " is left in the index");
+                continue;
+            }
+            check(channel != null, channelNames[c] + " is lost");
+            Set<ConnectionHandler> members = checkSnapshot(channel.getMembers(), channelNames[c]);
+            check(members.equals(expected), "the members of " + channelNames[c] + " are " + members.size()
+                    + " users, the workers left " + expected.size());
+            check(channel.size() == expected.size(), "the size of " + channelNames[c] + " is " + channel.size());
+            for (ConnectionHandler member : expected) {
+                check(channel.contains(member), channelNames[c] + " does not contain " + member.getNickName());
+            }
+        }
+        List<ConnectionHandler> all = new ArrayList<ConnectionHandler>();
+        for (ConnectionHandler resident : residents) {
+            all.add(resident);
+        }
+        for (int t = 0; t < threads; t++) {
+            for (int u = 0; u < USERS_PER_THREAD; u++) {
+                all.add(users[t][u]);
+            }
+        }
+        for (ConnectionHandler user : all) {
+            int id = user.getId();
+            if (id < 0) {
+                continue;
+            }
+            check(ids.add(id), "id " + id + " is held by two users");
+            check(userTable.get(id) == user, "id " + id + " of " + user.getNickName() + " is not in the table");
+        }
+        for (int t = 0; t < threads; t++) {
+            for (int u = 0; u < USERS_PER_THREAD; u++) {
+                boolean inChannel = false;
+                for (boolean b : joined[t][u]) {
+                    inChannel |= b;
+                }
+                check(inChannel == (users[t][u].getId() >= 0),
+                        users[t][u].getNickName() + " holds an id " + users[t][u].getId() + " in no channel");
+            }
+        }
+        check(userTable.getIdBound() <= all.size(), "the table handed out " + userTable.getIdBound() + " ids");
+    }
+
+    private ConnectionHandler newUser(String nickName) throws Exception {
+        SinkTransport transport = new SinkTransport();
+        ConnectionHandler user = new ConnectionHandler(context, transport);
+        transport.connectionHandler = user;
+        user.setNickName(nickName);
+        user.register(nickName + " 0 * :" + nickName);
+        return user;
+    }
+
+    private void guard(Operation operation) {
+        try {
+            operation.run();
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+            running = false;
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * The loop of a worker or reader thread.
+     */
+    interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * The transport which drops every line written to it.
+     */
+    static class SinkTransport implements ClientTransport {
+        private ConnectionHandler connectionHandler;
+        private ByteBuffer buffer = ByteBuffer.allocate(Configuration.WRITE_BUFFER_SIZE);
+
+        public void requestWrite() {
+            OutboundQueue outboundQueue = connectionHandler.getOutboundQueue();
+            int count;
+            do {
+                buffer.clear();
+                count = outboundQueue.fill(buffer);
+                outboundQueue.consume(count);
+            } while (count > 0);
+        }
+
+        public void close() {
+        }
+
+        public void abort() {
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The check of LineParser against the regular expressions it replaced. Every string of a fixed corpus and of a
+ * seeded random corpus is run through both, and the check fails on the first string they accept or reject
+ * differently or capture different fields from. The fixed corpus covers valid and invalid nicknames, channel names,
+ * USER and PRIVMSG arguments, and command lines without arguments or with empty and trailing parameters.
+ *
+ * PRIVMSG targets may be a comma separated list since the parser was written, which the old patterns never accepted.
+ * A list is checked by running every one of its targets with the same message through the old patterns.
+ *
+ * The nickname, channel name, USER and PRIVMSG checks only get the arguments of a command line, so they are compared
+ * on the strings the command line check passes on as arguments. The others, like a real name with a line terminator
+ * in it, never reach them.
+ *
+ * Usage, from the project directory:
+ *   gradle lineParserCheck
+ * or, with other arguments:
+ *   javac -d out $(find src test -name '*.java')
+ *   java -cp out LineParserCheck [random strings] [seed]
+ */
+public class LineParserCheck {
+
+    private static final Pattern COMMAND_PATTERN = Pattern.compile("^([A-Z]+)\\s?(.*)");
+    private static final Pattern NICK_NAME_PATTERN = Pattern.compile("^[A-Za-z_][\\w]{0,8}");
+    private static final Pattern CHANNEL_NAME_PATTERN = Pattern.compile("^\\#[\\w]+");
+    private static final Pattern USER_PATTERN = Pattern.compile("^([\\S]+)\\s0\\s\\*\\s:(.*)");
+    private static final Pattern PRIVMSG_USER_PATTERN = Pattern.compile("^([A-Za-z_][\\w]*)\\s:(.*)");
+    private static final Pattern PRIVMSG_CHANNEL_PATTERN = Pattern.compile("^(#\\w+)\\s:(.*)");
+
+    private static final String[] CORPUS = {
+        "", " ", ":", "#", ",", "0", "_", "a", "A", "\t", "\u00E9",
+        // nicknames
+        "nick", "Nick_9", "_", "_nick", "a12345678", "a123456789", "abcdefghi", "abcdefghij", "9nick", "-nick",
+        "ni-ck", "nick ", " nick", "ni ck", "nick\t", "nick\n", "nick\r", "nick\u0085", "nick\u2028", "n\u00E9",
+        "nick,other",
+        // channel names
+        "#chan", "#c", "#", "##chan", "#chan_9", "#9", "#ch an", "#chan ", " #chan", "#chan,#other", "&chan",
+        "#chan\n", "#ch\u00E9", "chan", "#_",
+        // USER arguments
+        "guest 0 * :Real Name", "guest 0 * :", "guest 0 *  :x", "guest\t0\t*\t:x", "guest 1 * :x", "guest 0 + :x",
+        "guest 0 * x", "guest 0 *", "guest 0 * :\u00E9", " guest 0 * :x", "guest  0 * :x", "g 0 * :x",
+        "g\u00E9 0 * :x", "guest 0 * :a 0 * :b", "0 0 * :0", "guest 0 * :x\n", "guest\n0 * :x", "guest",
+        // PRIVMSG arguments
+        "nick :hello", "nick :", "#chan :hello", "#chan :", "nick hello", "nick  :hello", "nick\t:hello",
+        "#chan\t:hello", "nick:hello", ":hello", " :hello", "# :hello", "#9 :x", "9nick :x", "nick :a :b",
+        "nick :\u00E9", "a,b :x", "#a,#b :x", "a,#b :x", "#a,b,c :x", "a, b :x", "a,,b :x", ",a :x", "a, :x",
+        "a,9 :x", "a,# :x", "a,#b", "a,b : x", "a,b\t:x", "verylongnicknamehere :x", "nick :hello\n",
+        // command lines
+        "NICK", "NICK ", "NICK  ", "NICK nick", "NICK\tnick", "NICK  nick", "nick nick", "Nick nick",
+        "JOIN #chan", "JOIN", "JOIN ", "PART #chan", "PRIVMSG nick :hello", "PRIVMSG #a,#b :hi there",
+        "PRIVMSG nick :", "PRIVMSG nick :trailing :colons", "PRIVMSG  nick :x", "QUIT", "QUIT :", "QUIT :bye",
+        "QUIT :bye now", "USER guest 0 * :Real Name", "USER guest 0 * :", "MODE a b c d e f g h i j k l m n o p q",
+        "MODE   a   :b", "TOPIC #a :", "TOPIC #a ::", ":prefix NICK nick", ":prefix", ": NICK nick",
+        ":a.b PRIVMSG x :y", " NICK nick", "NICK\nnick", "NICK nick\r", "NICK nick\u0085", "NICK nick\u2028",
+        "NICK nick\u2029", "NICK\u0085", "NICK\u00E9", "N1CK", "\u00C9NICK", "PING :x", "PONG\t:x"
+    };
+
+    private static final String[] TARGETS = {"a", "Z9", "_", "#a", "#_9", "#", "9", "a-b", "", "a b", "#\u00E9"};
+    private static final String[] SEPARATORS = {" :", "\t:", "\u000B:", "  :", ":", " ", " ::"};
+
+    private static final String ALPHABET = "aZ_9#:,* 0\t\n\r\u000B\f\u0085\u2028\u00E9-.";
+
+    private static int cases;
+
+    /**
+     * runs the check.
+     * @param args the number of random strings and the seed of the random corpus
+     */
+    public static void main(String[] args) {
+        int randomStrings = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+
+        for (String s : CORPUS) {
+            checkAll(s);
+        }
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < randomStrings; i++) {
+            sb.setLength(0);
+            int length = random.nextInt(16);
+            for (int j = 0; j < length; j++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            checkAll(sb.toString());
+            checkAll("PRIVMSG " + sb);
+            checkAll("USER " + sb + " 0 * :" + sb);
+            checkAll(randomTargets(random) + sb);
+        }
+        System.out.println(cases + " cases, no mismatch");
+    }
+
+    private static String randomTargets(Random random) {
+        StringBuilder sb = new StringBuilder(TARGETS[random.nextInt(TARGETS.length)]);
+        int more = random.nextInt(4);
+        for (int i = 0; i < more; i++) {
+            sb.append(',').append(TARGETS[random.nextInt(TARGETS.length)]);
+        }
+        return sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]).toString();
+    }
+
+    private static void checkAll(String s) {
+        checkCommandLine(s);
+        if (!isArguments(s)) {
+            return;
+        }
+        checkNickName(s);
+        checkChannelName(s);
+        checkUser(s);
+        checkPrivmsg(s);
+    }
+
+    private static boolean isArguments(String s) {
+        IrcMessage message = new IrcMessage();
+        return LineParser.parse("ARGUMENTS " + s, message) && message.getArguments().equals(s);
+    }
+
+    private static void checkCommandLine(String line) {
+        Matcher matcher = COMMAND_PATTERN.matcher(line);
+        IrcMessage message = new IrcMessage();
+        boolean accepted = LineParser.parse(line, message) && !message.hasPrefix();
+        expect(line, "command line", matcher.matches(), accepted);
+        if (accepted) {
+            expect(line, "command", matcher.group(1), message.getCommand());
+            expect(line, "command arguments", matcher.group(2), message.getArguments());
+            if (message.hasTrailing()) {
+                expect(line, "trailing", true, message.getArguments().contains(":" + message.getTrailing()));
+            }
+        }
+    }
+
+    private static void checkNickName(String nickName) {
+        expect(nickName, "nickname", NICK_NAME_PATTERN.matcher(nickName).matches(),
+                LineParser.isNickName(nickName));
+    }
+
+    private static void checkChannelName(String channelName) {
+        expect(channelName, "channel name", CHANNEL_NAME_PATTERN.matcher(channelName).matches(),
+                LineParser.isChannelName(channelName));
+    }
+
+    private static void checkUser(String arguments) {
+        Matcher matcher = USER_PATTERN.matcher(arguments);
+        int userNameEnd = LineParser.userNameEnd(arguments);
+        expect(arguments, "USER", matcher.matches(), userNameEnd >= 0);
+        if (userNameEnd >= 0) {
+            expect(arguments, "username", matcher.group(1), arguments.substring(0, userNameEnd));
+            expect(arguments, "real name", matcher.group(2), arguments.substring(userNameEnd + 6));
+        }
+    }
+
+    private static void checkPrivmsg(String arguments) {
+        int targetEnd = LineParser.privmsgTargetEnd(arguments);
+        if (targetEnd >= 0 && arguments.lastIndexOf(',', targetEnd) >= 0) {
+            String message = arguments.substring(targetEnd + 2);
+            expect(arguments, "PRIVMSG target list", false, matchPrivmsg(arguments) != null);
+            for (String target : split(arguments.substring(0, targetEnd))) {
+                String single = target + arguments.charAt(targetEnd) + ":" + message;
+                String[] groups = matchPrivmsg(single);
+                expect(single, "PRIVMSG target of a list", true, groups != null);
+                expect(single, "PRIVMSG target", groups[0], target);
+                expect(single, "PRIVMSG message", groups[1], message);
+            }
+            return;
+        }
+        String[] groups = matchPrivmsg(arguments);
+        expect(arguments, "PRIVMSG", groups != null, targetEnd >= 0);
+        if (targetEnd >= 0) {
+            expect(arguments, "PRIVMSG target", groups[0], arguments.substring(0, targetEnd));
+            expect(arguments, "PRIVMSG message", groups[1], arguments.substring(targetEnd + 2));
+        }
+    }
+
+    private static String[] matchPrivmsg(String arguments) {
+        Matcher userMatcher = PRIVMSG_USER_PATTERN.matcher(arguments);
+        if (userMatcher.matches()) {
+            return new String[] {userMatcher.group(1), userMatcher.group(2)};
+        }
+        Matcher channelMatcher = PRIVMSG_CHANNEL_PATTERN.matcher(arguments);
+        if (channelMatcher.matches()) {
+            return new String[] {channelMatcher.group(1), channelMatcher.group(2)};
+        }
+        return null;
+    }
+
+    private static List<String> split(String targets) {
+        List<String> list = new ArrayList<String>();
+        int start = 0;
+        int end;
+        while ((end = targets.indexOf(',', start)) >= 0) {
+            list.add(targets.substring(start, end));
+            start = end + 1;
+        }
+        list.add(targets.substring(start));
+        return list;
+    }
+
+    private static void expect(String input, String what, Object expected, Object actual) {
+        cases++;
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(what + " of \"" + escape(input) + "\": regex gives " + expected
+                    + ", LineParser gives " + actual);
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}